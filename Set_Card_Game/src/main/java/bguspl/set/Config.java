@@ -36,6 +36,32 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The features of all the cards in the deck, featureCount values per card in card id order
+     */
+    private final byte[] cardFeatures;
+
+    /**
+     * Whether to search for sets in large decks on several threads (see parallelFindSetsThreshold)
+     */
+    public final boolean parallelFindSets;
+
+    /**
+     * The minimal number of cards for which the search for sets is split between several threads
+     */
+    public final int parallelFindSetsThreshold;
+
+    /**
+     * Whether to check the claims the players did not check themselves on several threads (see
+     * parallelClaimChecksThreshold)
+     */
+    public final boolean parallelClaimChecks;
+
+    /**
+     * The minimal number of claims to check in a batch for which the checks are split between several threads
+     */
+    public final int parallelClaimChecksThreshold;
+
     /**
      * The number of human players in the game.
      */
@@ -51,11 +77,38 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * The number of milliseconds between two key presses of a computer player
+     */
+    public final long computerPressIntervalMillis;
+
+    /**
+     * Whether to run the player threads as virtual threads (when the JDK supports them)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * The number of key presses each player may have waiting for the player thread
+     */
+    public final int keyPressQueueSize;
+
+    /**
+     * Whether a computer player waits for room in its full key press queue instead of dropping the press
+     * (key presses of human players are always dropped, so the ui never waits)
+     */
+    public final boolean keyPressQueueBlocks;
+
     /**
      * Whether to print out hints to the console or not
      */
     public final boolean hints;
 
+    /**
+     * How the dealer chooses the cards to deal: Random, GuaranteedSet (make sure the table has a set when possible) or
+     * Reshuffle (reshuffle a table without a set right away)
+     */
+    public final String dealingStrategy;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -107,6 +160,17 @@ public class Config {
      */
     public final int tableSize;
 
+    /**
+     * Whether the table may grow by a spare column of cards when there is no set among the cards on it
+     */
+    public final boolean tableExpansion;
+
+    /**
+     * The total number of slots on the table, including the spare column (its slots follow the grid cells, from top
+     * to bottom)
+     */
+    public final int maxTableSize;
+
     /**
      * The width (in pixels) of each cell
      */
@@ -148,6 +212,11 @@ public class Config {
             "81,87,69,82,65,83,68,70,90,88,67,86",
             "85,73,79,80,74,75,76,59,77,44,46,47"};
 
+    /**
+     * The default scan codes of the spare column (the keys to the right of the default keys)
+     */
+    private static final String[] playerSpareKeysDefaults = {"84,71,66", "91,222,16"};
+
     /**
      * Attempts to read the config properties from the current working directory. Otherwise, tries to load them
      * as a resource.
@@ -195,13 +264,26 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        cardFeatures = new byte[deckSize * featureCount];
+        for (int card = 0; card < deckSize; ++card)
+            for (int i = featureCount - 1, value = card; i >= 0; --i, value /= featureSize)
+                cardFeatures[card * featureCount + i] = (byte) (value % featureSize);
+        parallelFindSets = Boolean.parseBoolean(properties.getProperty("ParallelFindSets", "False"));
+        parallelFindSetsThreshold = Integer.parseInt(properties.getProperty("ParallelFindSetsThreshold", "128"));
+        parallelClaimChecks = Boolean.parseBoolean(properties.getProperty("ParallelClaimChecks", "False"));
+        parallelClaimChecksThreshold = Integer.parseInt(properties.getProperty("ParallelClaimChecksThreshold", "16"));
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        computerPressIntervalMillis = (long) (Double.parseDouble(properties.getProperty("ComputerPressIntervalSeconds", "0.05")) * 1000.0);
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+        keyPressQueueSize = Integer.parseInt(properties.getProperty("KeyPressQueueSize", "8"));
+        keyPressQueueBlocks = properties.getProperty("KeyPressQueueFull", "Drop").trim().equalsIgnoreCase("Block");
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        dealingStrategy = properties.getProperty("DealingStrategy", "Random").trim();
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
@@ -217,6 +299,11 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        tableExpansion = Boolean.parseBoolean(properties.getProperty("TableExpansion", "False"));
+        maxTableSize = tableExpansion ? tableSize + rows : tableSize;
+        // the table keeps the tokens of each player as a bitmask of slots in a single long
+        if (maxTableSize > Long.SIZE)
+            throw new IllegalArgumentException("the table may have at most " + Long.SIZE + " slots: " + maxTableSize);
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
@@ -224,7 +311,7 @@ public class Config {
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
 
         // keyboard input data
-        playerKeys = new int[players][rows * columns];
+        playerKeys = new int[players][maxTableSize];
         for (int i = 0; i < players; i++) {
             String defaultCodes = "";
             if (i < 2) defaultCodes = playerKeysDefaults[i];
@@ -236,10 +323,69 @@ public class Config {
                 for (int j = 0; j < Math.min(codes.length, tableSize); ++j) // parse the key codes string
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
             }
+            if (!tableExpansion) continue;
+            String playerSpareKeysString = properties.getProperty("PlayerSpareKeys" + (i + 1), i < 2 ? playerSpareKeysDefaults[i] : "");
+            if (playerSpareKeysString.length() > 0) {
+                String[] codes = playerSpareKeysString.split(",");
+                if (codes.length != rows)
+                    logger.severe("warning: player " + (i + 1) + " spare keys (" + codes.length + ") mismatch rows (" + rows + ").");
+                for (int j = 0; j < Math.min(codes.length, rows); ++j)
+                    playerKeys[i][tableSize + j] = Integer.parseInt(codes[j].trim());
+            }
         }
     }
 
+    /**
+     * @param slot - the slot number.
+     * @return - the row of the slot in the grid.
+     */
+    public int slotRow(int slot) {
+        return slot < tableSize ? slot / columns : slot - tableSize;
+    }
+
+    /**
+     * @param slot - the slot number.
+     * @return - the column of the slot in the grid (the spare column follows the other columns).
+     */
+    public int slotColumn(int slot) {
+        return slot < tableSize ? slot % columns : columns;
+    }
+
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * Returns a single feature of a card.
+     *
+     * @param card    - the card id.
+     * @param feature - the index of the feature (between 0 and featureCount - 1).
+     * @return - the value of the feature (between 0 and featureSize - 1).
+     */
+    public int feature(int card, int feature) {
+        return cardFeatures[card * featureCount + feature];
+    }
+
+    /**
+     * Copies the features of a card into the given array.
+     *
+     * @param card     - the card id.
+     * @param features - an array of at least featureCount values to copy the features to.
+     */
+    public void cardToFeatures(int card, int[] features) {
+        for (int i = 0, from = card * featureCount; i < featureCount; ++i)
+            features[i] = cardFeatures[from + i];
+    }
+
+    /**
+     * Copies the features of several cards into the given array, featureCount values per card.
+     *
+     * @param cards    - an array of card ids.
+     * @param features - an array of at least cards.length * featureCount values to copy the features to.
+     */
+    public void cardsToFeatures(int[] cards, int[] features) {
+        for (int j = 0, to = 0; j < cards.length; ++j)
+            for (int i = 0, from = cards[j] * featureCount; i < featureCount; ++i)
+                features[to++] = cardFeatures[from + i];
+    }
 }
@@ -6,6 +6,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
@@ -108,6 +109,13 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
+        // the number of columns in the grid, including the spare column if the table may grow
+        private final int columns = config.tableExpansion ? config.columns + 1 : config.columns;
+
+        // the card changes waiting to be drawn, one per tick of the animation timer (accessed only on the EDT)
+        private final ArrayDeque<Runnable> cardUpdates = new ArrayDeque<>();
+        private final Timer animation;
+
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
             if (imageResource == null)
@@ -117,7 +125,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private GamePanel() {
 
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+            setPreferredSize(new Dimension(columns * config.cellWidth, config.rows * config.cellHeight));
 
             // init deck and load all pictures from png files
             assert config.featureSize < 10; // otherwise there will be naming conflicts
@@ -128,11 +136,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
             emptyCard = loadImageResource("cards/empty_card.png");
 
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
+            grid = new Image[config.rows][columns];
+            tokenText = new JLabel[config.rows][columns];
+            playerTokens = new boolean[config.players][config.rows][columns];
             for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
+                for (int column = 0; column < columns; column++) {
                     // init the cards on the table grid as empty cards
                     grid[row][column] = emptyCard;
 
@@ -146,39 +154,62 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                     add(tokenText[row][column]);
                 }
             }
+
+            // staggers batches of card changes by the table delay, so the dealer does not have to wait for them
+            animation = new Timer((int) config.tableDelayMillis, e -> {
+                Runnable update = cardUpdates.poll();
+                if (update != null) update.run();
+                if (cardUpdates.isEmpty()) ((Timer) e.getSource()).stop();
+            });
+        }
+
+        /**
+         * Applies a card change on the EDT after the changes already waiting, if any.
+         * @param update    - the card change.
+         * @param staggered - true iff the change should wait for a tick of the animation timer.
+         */
+        private void updateCards(Runnable update, boolean staggered) {
+            EventQueue.invokeLater(() -> {
+                if (!staggered && cardUpdates.isEmpty()) {
+                    update.run();
+                } else {
+                    cardUpdates.add(update);
+                    animation.start();
+                }
+            });
         }
 
         private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
             grid[row][column] = deck[card];
             validate();
             repaint();
         }
 
         private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
             grid[row][column] = emptyCard;
             validate();
             repaint();
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
             playerTokens[player][row][column] = true;
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
+            for (int i = 0; i < config.maxTableSize; i++)
                 removeTokens(i);
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
             for (int player = 0; player < playerTokens.length; player++) {
                 playerTokens[player][row][column] = false;
                 tokenText[row][column].setText(generatePlayersTokenText(row, column));
@@ -186,8 +217,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
             playerTokens[player][row][column] = false;
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
@@ -207,7 +238,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         public void paintComponent(Graphics g) {
             // draw card images
             for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
+                for (int column = 0; column < columns; column++)
                     g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
         }
     }
@@ -275,12 +306,26 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        gamePanel.updateCards(() -> gamePanel.placeCard(slot, card), false);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        gamePanel.updateCards(() -> gamePanel.removeCard(slot), false);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; i++) {
+            int card = cards[i], slot = slots[i];
+            gamePanel.updateCards(() -> gamePanel.placeCard(slot, card), true);
+        }
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        for (int slot : slots)
+            gamePanel.updateCards(() -> gamePanel.removeCard(slot), true);
     }
 
     @Override
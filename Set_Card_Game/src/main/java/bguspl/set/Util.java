@@ -1,6 +1,10 @@
 package bguspl.set;
 
+import java.util.BitSet;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +35,27 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks if three cards form a legal set, without allocating (when config.featureSize is 3).
+     *
+     * @param a - the first card id.
+     * @param b - the second card id.
+     * @param c - the third card id.
+     * @return - true iff the three cards form a legal set.
+     */
+    boolean testSet(int a, int b, int c);
+
+    /**
+     * Returns the features of a card packed into a single number: 2 bits holding each feature value when
+     * config.featureSize is 3, otherwise config.featureSize bits per feature with the bit of its value set.
+     * Packed cards keep the order of the card ids.
+     *
+     * @param card - the card id.
+     * @return - the packed features of the card.
+     * @throws UnsupportedOperationException - if the features of a card do not fit in 64 bits.
+     */
+    long packedCard(int card);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +65,37 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets which contain the given card and other cards of the given collection.
+     *
+     * @param card  - the card id every set should contain.
+     * @param cards - a bitset of card ids to complete the sets from (the card itself is ignored).
+     * @param count - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the sorted card ids of a legal set.
+     */
+    List<int[]> findSetsWith(int card, BitSet cards, int count);
+
+    /**
+     * Returns a lazy cursor over all the sets in the given collection of cards. The sets are found one lowest card at
+     * a time while the cursor advances, and the cursor can be split to go over the sets in parallel.
+     * The cursor works on a copy of the cards. When the cards cannot be packed (see packedCard) or featureSize is less
+     * than 3, the sets are all found up front instead.
+     *
+     * @param cards - a bitset of card ids.
+     * @return - a spliterator of integer arrays, each one contains the sorted card ids of a legal set.
+     */
+    Spliterator<int[]> setsSpliterator(BitSet cards);
+
+    /**
+     * Returns a lazy stream of all the sets in the given collection of cards (see setsSpliterator).
+     *
+     * @param cards - a bitset of card ids.
+     * @return - a stream of integer arrays, each one contains the sorted card ids of a legal set.
+     */
+    default Stream<int[]> streamSets(BitSet cards) {
+        return StreamSupport.stream(setsSpliterator(cards), false);
+    }
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -1,9 +1,17 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -13,48 +21,163 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The packed features of every card (see packedCard), or null if they do not fit in a long.
+     */
+    private final long[] packedCards;
+
+    /**
+     * The number of bits used for each feature in the packed form.
+     */
+    private final int laneWidth;
+
+    /**
+     * Masks of the lowest bit, the highest bit and all the bits of every feature lane in the packed form.
+     */
+    private final long laneLowBits;
+    private final long laneHighBits;
+    private final long laneAllBits;
+
+    /**
+     * The features of the cards tested by testSetByFeatures, reused by each thread so the test does not allocate.
+     */
+    private final ThreadLocal<int[]> testedFeatures;
+
     public UtilImpl(Config config) {
         this.config = config;
+
+        // 2 bits holding the feature value when featureSize is 3, otherwise one bit per feature value
+        laneWidth = config.featureSize == 3 ? 2 : config.featureSize;
+        long lowBits = 0;
+        for (int i = 0; i < config.featureCount && i * laneWidth < Long.SIZE; ++i)
+            lowBits |= 1L << (i * laneWidth);
+        laneLowBits = lowBits;
+        laneHighBits = lowBits << (laneWidth - 1);
+        laneAllBits = laneHighBits | (laneHighBits - laneLowBits);
+
+        if (config.featureSize > 1 && laneWidth * config.featureCount <= Long.SIZE) {
+            packedCards = new long[config.deckSize];
+            Arrays.setAll(packedCards, this::pack);
+        } else packedCards = null;
+        testedFeatures = ThreadLocal.withInitial(() -> new int[config.featureSize * config.featureCount]);
+    }
+
+    /**
+     * Packs the features of a card, the last feature in the lowest lane (so packed cards keep the order of card ids).
+     */
+    private long pack(int card) {
+        long packed = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int value = config.feature(card, config.featureCount - 1 - i);
+            packed |= (config.featureSize == 3 ? value : 1L << value) << (i * laneWidth);
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the packed third card of the set that the two given packed cards belong to (featureSize 3 only):
+     * lanes where both cards are the same keep their value, the other lanes get the remaining value (a ^ b ^ 3).
+     */
+    private long thirdCard(long a, long b) {
+        long differ = a ^ b;
+        long mask = (differ | (differ >>> 1)) & laneLowBits;
+        mask |= mask << 1;
+        return (differ ^ mask) | (a & ~mask);
     }
 
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
+    /**
+     * Returns the card id of a packed card (the inverse of pack).
+     */
+    private int unpack(long packed) {
+        long laneMask = -1L >>> (Long.SIZE - laneWidth);
+        int card = 0;
+        for (int shift = (config.featureCount - 1) * laneWidth; shift >= 0; shift -= laneWidth) {
+            long lane = packed >>> shift & laneMask;
+            card = card * config.featureSize + (config.featureSize == 3 ? (int) lane : Long.numberOfTrailingZeros(lane));
         }
+        return card;
+    }
+
+    /**
+     * Returns the highest bit of every lane of the given packed value which is not zero.
+     */
+    private long nonZeroLanes(long packed) {
+        long lowPart = laneAllBits & ~laneHighBits;
+        return (((packed & lowPart) + lowPart) | packed) & laneHighBits;
+    }
+
+    /**
+     * Spreads the highest bit of every lane given to all the bits of its lane.
+     */
+    private long fillLanes(long highBits) {
+        return highBits | (highBits - (highBits >>> (laneWidth - 1)));
     }
 
     @Override
     public int[] cardToFeatures(int card) {
         int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
+        config.cardToFeatures(card, features);
         return features;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        IntStream.range(0, cards.length).forEach(i -> config.cardToFeatures(cards[i], features[i]));
         return features;
     }
 
+    @Override
+    public long packedCard(int card) {
+        if (packedCards == null)
+            throw new UnsupportedOperationException("cards with " + config.featureCount + " features of size "
+                    + config.featureSize + " cannot be packed");
+        return packedCards[card];
+    }
+
+    @Override
+    public boolean testSet(int a, int b, int c) {
+        if (packedCards == null || config.featureSize != 3) return testSet(new int[]{a, b, c});
+        return thirdCard(packedCards[a], packedCards[b]) == packedCards[c];
+    }
+
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
+        if (packedCards == null || cards.length != config.featureSize) return testSetByFeatures(cards);
+        if (config.featureSize == 3) return testSet(cards[0], cards[1], cards[2]);
+
+        // a lane is legal iff it holds a single value (all same) or all the values (all different)
+        long union = 0;
+        for (int card : cards)
+            union |= packedCards[card];
+        long notSingle = union & (union - laneLowBits);
+        long notFull = union ^ laneAllBits;
+        return (nonZeroLanes(notSingle) & nonZeroLanes(notFull)) == 0;
+    }
+
+    private boolean testSetByFeatures(int[] cards) {
+        int count = config.featureCount;
+        int[] features = testedFeatures.get();
+        if (features.length < cards.length * count) {
+            features = new int[cards.length * count];
+            testedFeatures.set(features);
+        }
+        // the features of card j are at features[j * count .. (j + 1) * count)
+        config.cardsToFeatures(cards, features);
+        for (int i = 0; i < count; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                if (features[i] != features[j * count + i]) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (features[(j - 1) * count + i] == features[k * count + i]) {
                         butDifferent = false;
                         break;
                     }
@@ -66,18 +189,302 @@ public class UtilImpl implements Util {
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        if (count <= 0) return new LinkedList<>();
+        // with featureSize 2 any pair is a set, so the last card is not fixed by the others
+        if (packedCards == null || config.featureSize < 3) return findSetsByCombinations(deck, count);
+
+        int[] cards = deck.stream().mapToInt(Integer::intValue).sorted().toArray();
+        BitSet available = new BitSet(config.deckSize);
+        for (int card : cards)
+            available.set(card);
+
+        if (config.parallelFindSets && cards.length >= config.parallelFindSetsThreshold) {
+            int grain = Math.max(1, cards.length / (ForkJoinPool.getCommonPoolParallelism() * 8));
+            List<int[]> sets = ForkJoinPool.commonPool().invoke(
+                    new FindSetsTask(this, cards, available, 0, cards.length, grain, new AtomicInteger(), count));
+            return sets.size() > count ? new ArrayList<>(sets.subList(0, count)) : sets;
+        }
+        LinkedList<int[]> sets = new LinkedList<>();
+        findSets(cards, available, 0, cards.length, sets, new AtomicInteger(), count);
+        return sets;
+    }
+
+    @Override
+    public List<int[]> findSetsWith(int card, BitSet cards, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        if (count <= 0) return sets;
+        int[] others = cards.stream().filter(other -> other != card).toArray();
+        if (packedCards == null || config.featureSize < 3) {
+            List<Integer> deck = Arrays.stream(others).boxed().collect(Collectors.toList());
+            deck.add(card);
+            findSetsByCombinations(deck, Integer.MAX_VALUE).stream()
+                    .filter(set -> Arrays.stream(set).anyMatch(other -> other == card))
+                    .limit(count).forEach(sets::add);
+        } else if (config.featureSize == 3) {
+            long first = packedCards[card];
+            for (int other : others) {
+                int third = unpack(thirdCard(first, packedCards[other]));
+                if (third > other && third != card && cards.get(third)) {
+                    int[] set = {card, other, third};
+                    Arrays.sort(set);
+                    sets.add(set);
+                    if (sets.size() >= count) break;
+                }
+            }
+        } else new SetSearch(others, cards, sets, new AtomicInteger(), count).searchWith(card);
+        return sets;
+    }
+
+    @Override
+    public Spliterator<int[]> setsSpliterator(BitSet cards) {
+        // without completion by packed features, the combinations are all tested up front
+        if (packedCards == null || config.featureSize < 3)
+            return findSetsByCombinations(cards.stream().boxed().collect(Collectors.toList()), Integer.MAX_VALUE).spliterator();
+        // the cursor reads its own copy of the cards, so later changes of the caller's bitset do not reach it
+        BitSet available = (BitSet) cards.clone();
+        return new SetsSpliterator(available.stream().toArray(), available, 0, available.cardinality());
+    }
+
+    /**
+     * Finds the sets among the given sorted cards whose lowest card is one of cards[from..to).
+     *
+     * @param cards     - the sorted card ids.
+     * @param available - the cards, as a bitset of card ids.
+     * @param from      - the index of the first lowest card to check.
+     * @param to        - the index after the last lowest card to check.
+     * @param sets      - the list to add the sets found to.
+     * @param found     - the number of sets found so far (may be shared with other searches).
+     * @param count     - the number of sets to find, after which the search stops.
+     */
+    private void findSets(int[] cards, BitSet available, int from, int to, List<int[]> sets, AtomicInteger found, int count) {
+        if (config.featureSize == 3) findSetsByCompletion(cards, available, from, to, sets, found, count);
+        else new SetSearch(cards, available, sets, found, count).search(0, from, to);
+    }
+
+    /**
+     * Finds sets of 3 cards by computing, for every pair of cards, the card completing their set and looking it up
+     * in the bitset of available cards. Each set is found once, from its two lowest cards.
+     */
+    private void findSetsByCompletion(int[] cards, BitSet available, int from, int to, List<int[]> sets,
+                                      AtomicInteger found, int count) {
+        for (int i = from; i < Math.min(to, cards.length - 2) && found.get() < count; ++i) {
+            long first = packedCards[cards[i]];
+            for (int j = i + 1; j < cards.length - 1; ++j) {
+                int third = unpack(thirdCard(first, packedCards[cards[j]]));
+                if (third > cards[j] && available.get(third)) {
+                    sets.add(new int[]{cards[i], cards[j], third});
+                    if (found.incrementAndGet() >= count) return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a depth first search for sets of any featureSize: it chooses all the cards of a set but the last
+     * one in increasing order, dropping a choice as soon as some feature is neither all same nor all different, and
+     * derives the last card from the rest. For each depth it keeps the union of the packed cards chosen so far and
+     * the lanes in which they are all the same or all different.
+     */
+    private class SetSearch {
+
+        private final int[] cards;
+        private final BitSet available;
+        private final List<int[]> sets;
+        private final AtomicInteger found;
+        private final int count;
+
+        private final int[] chosen = new int[config.featureSize];
+        private final long[] union = new long[config.featureSize];
+        private final long[] same = new long[config.featureSize];
+        private final long[] different = new long[config.featureSize];
+
+        private SetSearch(int[] cards, BitSet available, List<int[]> sets, AtomicInteger found, int count) {
+            this.cards = cards;
+            this.available = available;
+            this.sets = sets;
+            this.found = found;
+            this.count = count;
+        }
+
+        /**
+         * Searches the sets which contain the given card (which should not be one of the cards searched).
+         */
+        private void searchWith(int card) {
+            union[0] = packedCards[card];
+            same[0] = different[0] = laneHighBits;
+            chosen[0] = card;
+            search(1, 0, cards.length);
+        }
+
+        /**
+         * Chooses the card at the given depth out of cards[from..to), and searches the rest of the set.
+         *
+         * @return - false iff count sets were found (and the search should stop).
+         */
+        private boolean search(int depth, int from, int to) {
+            int last = config.featureSize - 2;
+            for (int i = from; i < Math.min(to, cards.length - (last - depth) - 1); ++i) {
+                long card = packedCards[cards[i]];
+                if (depth == 0) {
+                    if (found.get() >= count) return false;
+                    union[0] = card;
+                    same[0] = different[0] = laneHighBits;
+                } else {
+                    same[depth] = same[depth - 1] & nonZeroLanes(card & union[0]);
+                    different[depth] = different[depth - 1] & ~nonZeroLanes(card & union[depth - 1]);
+                    if ((same[depth] | different[depth]) != laneHighBits) continue;
+                    union[depth] = union[depth - 1] | card;
+                }
+                chosen[depth] = cards[i];
+                if (!(depth == last ? complete() : search(depth + 1, i + 1, cards.length))) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Derives the last card of the set from the other cards chosen, and adds the set if the card is available.
+         *
+         * @return - false iff count sets were found.
+         */
+        private boolean complete() {
+            int last = config.featureSize - 2;
+            long missing = fillLanes(different[last]);
+            long kept = fillLanes(same[last]) & ~missing;
+            int card = unpack((missing & (laneAllBits ^ union[last])) | (kept & union[0]));
+            if (card <= chosen[last] || !available.get(card)) return true;
+
+            int[] set = Arrays.copyOf(chosen, config.featureSize);
+            set[last + 1] = card;
+            Arrays.sort(set);
+            sets.add(set);
+            return found.incrementAndGet() < count;
+        }
+    }
+
+    /**
+     * Finds sets in parallel by splitting the range of their lowest cards in halves, down to the given grain. Each
+     * task collects its own sets and the halves are merged on join. All the tasks share the number of sets found, so
+     * that they stop once count sets were found.
+     */
+    private static class FindSetsTask extends RecursiveTask<List<int[]>> {
+
+        private static final long serialVersionUID = 1L;
+
+        // finds the sets of each range, with the packed features of the cards (tasks are never serialized)
+        private final transient UtilImpl util;
+        private final int[] cards;
+        private final BitSet available;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final AtomicInteger found;
+        private final int count;
+
+        private FindSetsTask(UtilImpl util, int[] cards, BitSet available, int from, int to, int grain,
+                             AtomicInteger found, int count) {
+            this.util = util;
+            this.cards = cards;
+            this.available = available;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.found = found;
+            this.count = count;
+        }
+
+        @Override
+        protected List<int[]> compute() {
+            List<int[]> sets = new ArrayList<>();
+            if (found.get() >= count) return sets;
+            if (to - from <= grain) {
+                util.findSets(cards, available, from, to, sets, found, count);
+                return sets;
+            }
+
+            int middle = (from + to) >>> 1;
+            FindSetsTask left = new FindSetsTask(util, cards, available, from, middle, grain, found, count);
+            FindSetsTask right = new FindSetsTask(util, cards, available, middle, to, grain, found, count);
+            left.fork();
+            List<int[]> rightSets = right.compute();
+            sets = left.join();
+            sets.addAll(rightSets);
+            return sets;
+        }
+    }
+
+    /**
+     * A lazy cursor over the sets whose lowest card is one of cards[from..to). The sets of each lowest card are found
+     * only when the sets of the previous one were all consumed, and splitting hands over the upper half of the range.
+     */
+    private class SetsSpliterator implements Spliterator<int[]> {
+
+        private final int[] cards;
+        private final BitSet available;
+        private int from;
+        private int to;
+
+        private final LinkedList<int[]> sets = new LinkedList<>();
+        private final AtomicInteger found = new AtomicInteger();
+
+        private SetsSpliterator(int[] cards, BitSet available, int from, int to) {
+            this.cards = cards;
+            this.available = available;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            while (sets.isEmpty() && from < to) {
+                found.set(0);
+                findSets(cards, available, from, ++from, sets, found, Integer.MAX_VALUE);
+            }
+            if (sets.isEmpty()) return false;
+            action.accept(sets.poll());
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            if (to - from < 2) return null;
+            int middle = (from + to) >>> 1;
+            SetsSpliterator upper = new SetsSpliterator(cards, available, middle, to);
+            to = middle;
+            return upper;
+        }
+
+        /**
+         * @return - a heuristic for the number of sets left: the number of lowest cards left to search, plus the sets
+         *           found and not consumed yet (the actual number of sets is not known before they are found).
+         */
+        @Override
+        public long estimateSize() {
+            return to - from + sets.size();
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    private List<int[]> findSetsByCombinations(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
         int[] combination = new int[r];
+        int[] cards = new int[r];
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
         while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
+            for (int i = 0; i < r; ++i)
+                cards[i] = deck.get(combination[i]);
+            if (r == 3 ? testSet(cards[0], cards[1], cards[2]) : testSet(cards)) {
+                int[] set = cards.clone();
+                Arrays.sort(set);
+                sets.add(set);
                 if (sets.size() >= count) return sets;
             }
 
@@ -0,0 +1,209 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class passes the players' claims to the dealer through a fixed ring of reusable claim entries.
+ * Any number of players may publish claims concurrently, and only the dealer thread consumes them.
+ * Publishing only takes a sequence number, so it neither locks, waits nor allocates.
+ * Each player may only have a single claim in the ring until the dealer releases it, so the ring always has room for
+ * the claim of a player, however many claims the other players make.
+ *
+ * @inv consumed <= read <= next
+ * @inv next - consumed <= entries.length
+ * @inv 0 <= outstanding[player] <= 1
+ */
+public class ClaimRing {
+
+    /**
+     * A reusable entry of the ring, holding a single claim.
+     */
+    public static class Claim {
+
+        /**
+         * The id of the player who made the claim.
+         */
+        public int player;
+
+        /**
+         * The card ids the player claims to be a set.
+         */
+        public final int[] cards;
+
+        /**
+         * The slots the claimed cards were in when the player claimed them.
+         */
+        public final int[] slots;
+
+        /**
+         * The versions of the slots the player saw when reading the claimed cards.
+         */
+        public final int[] versions;
+
+        /**
+         * True iff the player checked the claimed cards before publishing the claim.
+         */
+        public boolean checked;
+
+        /**
+         * True iff the player found the claimed cards to be a legal set (only meaningful if the claim is checked).
+         */
+        public boolean legal;
+
+        /**
+         * The future to complete with the verdict of the claim, or null if no one waits for it.
+         */
+        public CompletableFuture<Verdict> verdict;
+
+        /**
+         * The sequence number of the claim (claims are consumed in sequence order).
+         */
+        public long sequence;
+
+        private Claim(int size) {
+            cards = new int[size];
+            slots = new int[size];
+            versions = new int[size];
+        }
+    }
+
+    /**
+     * The entries of the ring (the number of entries is a power of 2).
+     */
+    private final Claim[] entries;
+
+    /**
+     * The number of claims each player has in the ring (published or about to be, and not released yet).
+     */
+    private final AtomicIntegerArray outstanding;
+
+    /**
+     * The sequence number last published in each entry (-1 if none).
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence number to hand to a publishing player.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The first sequence number whose entry was not released by the dealer yet.
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * The next sequence number the dealer will read (only accessed by the dealer thread).
+     */
+    private long read;
+
+    /**
+     * The class constructor.
+     *
+     * @param players - the number of players.
+     * @param size    - the number of cards in each claim.
+     */
+    public ClaimRing(int players, int size) {
+        outstanding = new AtomicIntegerArray(players);
+        // room for a claim of each player, and for the claims released but not marked consumed yet
+        int length = Integer.highestOneBit(Math.max(1, players) * 4 - 1);
+        entries = new Claim[length];
+        published = new AtomicLongArray(length);
+        for (int i = 0; i < length; i++) {
+            entries[i] = new Claim(size);
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Publishes a claim to the dealer.
+     *
+     * @param player   - the id of the player making the claim.
+     * @param cards    - the claimed card ids.
+     * @param slots    - the slots of the claimed cards.
+     * @param versions - the versions of the slots the player saw.
+     * @param legal    - true iff the player checked the claimed cards are a legal set.
+     * @throws IllegalStateException - if the player has a claim in the ring already.
+     */
+    public void publish(int player, int[] cards, int[] slots, int[] versions, boolean legal) {
+        publish(player, cards, slots, versions, true, legal, null);
+    }
+
+    /**
+     * Publishes a claim the player did not check to the dealer, who checks it.
+     *
+     * @param player   - the id of the player making the claim.
+     * @param cards    - the claimed card ids.
+     * @param slots    - the slots of the claimed cards.
+     * @param versions - the versions of the slots the player saw.
+     * @param verdict  - the future to complete with the verdict of the claim.
+     * @throws IllegalStateException - if the player has a claim in the ring already.
+     */
+    public void publishUnchecked(int player, int[] cards, int[] slots, int[] versions,
+                                 CompletableFuture<Verdict> verdict) {
+        publish(player, cards, slots, versions, false, false, verdict);
+    }
+
+    private void publish(int player, int[] cards, int[] slots, int[] versions, boolean checked, boolean legal,
+                         CompletableFuture<Verdict> verdict) {
+        if (!outstanding.compareAndSet(player, 0, 1))
+            throw new IllegalStateException("player " + player + " has a claim in the ring already");
+
+        // a player has one claim at most, so its claim always finds a free entry
+        long sequence = next.getAndIncrement();
+
+        Claim claim = entries[index(sequence)];
+        claim.player = player;
+        System.arraycopy(cards, 0, claim.cards, 0, claim.cards.length);
+        System.arraycopy(slots, 0, claim.slots, 0, claim.slots.length);
+        System.arraycopy(versions, 0, claim.versions, 0, claim.versions.length);
+        claim.checked = checked;
+        claim.legal = legal;
+        claim.verdict = verdict;
+        claim.sequence = sequence;
+        published.lazySet(index(sequence), sequence);
+    }
+
+    /**
+     * Returns the next claim in sequence order, if it was published (dealer thread only).
+     * The entry stays valid until the dealer releases it.
+     *
+     * @return - the next claim, or null if there is none.
+     */
+    public Claim poll() {
+        if (published.get(index(read)) != read)
+            return null;
+        return entries[index(read++)];
+    }
+
+    /**
+     * Releases all the claims polled so far, so players can reuse their entries (dealer thread only).
+     */
+    public void release() {
+        for (long sequence = consumed.get(); sequence < read; sequence++)
+            outstanding.decrementAndGet(entries[index(sequence)].player);
+        consumed.lazySet(read);
+    }
+
+    /**
+     * @return - the number of claims taken by players and not released by the dealer yet.
+     */
+    public int size() {
+        return (int) (next.get() - consumed.get());
+    }
+
+    /**
+     * @param player - the id of the player.
+     * @return - the number of claims the player has in the ring.
+     */
+    public int outstanding(int player) {
+        return outstanding.get(player);
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & (entries.length - 1);
+    }
+}
@@ -1,10 +1,18 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Util;
 
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.IntStream;
 //import java.util.Collection;
 
@@ -18,10 +26,16 @@ public class Dealer implements Runnable {
      */
     private final Env env;
 
-    public Thread dealerThread;
+    public volatile Thread dealerThread;
 
     // if the dealer has sets to check
-    public boolean checksets;
+    private volatile boolean checksets;
+
+    // if the timer event the dealer sleeps until is due
+    private volatile boolean timerDue;
+
+    // the timer event the dealer sleeps until, or null if none is scheduled
+    private TimerWheel.Timeout timerEvent;
 
     /**
      * private final Env env;
@@ -35,9 +49,24 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
+     */
+    private final DrawPile deck;
+
+    /**
+     * Chooses the cards to deal, and whether to reshuffle a table without a set right away.
+     */
+    private final DealingStrategy dealing;
+
+    /**
+     * The cards still in play (in the deck or on the table), as a bitset of card ids.
+     */
+    private final BitSet cardsInPlay;
+
+    /**
+     * The number of legal sets that can still be formed from the cards in play.
      */
-    private final List<Integer> deck;
+    private int setsInPlay;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -47,21 +76,45 @@ public class Dealer implements Runnable {
     // time the clock start
     private long starttime;
 
-    //lock for sets time
-    final public Object setsLock;
-
     // indicate the time is negative or positive
     private long INDICATOR_TIME = 0;
 
+    // the countdown or elapsed time last displayed, in the units it is displayed in
+    private long displayedTime = -1;
+
+    // true iff the countdown last displayed was a warning
+    private boolean displayedWarn;
+
     //all players threads
     Thread[] playerThreads;
 
-    // cards that send to check if them sets
-    ArrayDeque<int[]> cards;
+    // runs the key presses of all the computer players, or null if there are none
+    final ScheduledExecutorService aiScheduler;
+
+    // runs the deadlines of the game: the freezes of the players and the dealer's timer events
+    final TimerWheel timers;
+
+    // claims that players send to check if they are sets
+    final ClaimRing claims;
+
+    // the claims polled from the ring, and which of them are not committed yet
+    private final ClaimRing.Claim[] batch;
+    private final BitSet pending;
+
+    // the pending claims on each slot, as a bitset of batch indices
+    private final BitSet[] claimsOnSlot;
 
-    // slots of the sets crads
-    ArrayDeque<int[]> slots ;
+    // the pending claims made stale by the last set taken
+    private final BitSet invalidated;
 
+    // the batch index of the claim of each player, or -1 if the player has no claim in the batch
+    private final int[] claimOf;
+
+    // the player whose claims are served first in the next batch
+    private int nextPlayer;
+
+    // the players whose claims were judged in the current batch, woken up once the batch is released
+    private final BitSet toWake;
 
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
@@ -72,11 +125,35 @@ public class Dealer implements Runnable {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        deck = new DrawPile(env.config.deckSize);
+        for (int card = 0; card < env.config.deckSize; card++)
+            deck.add(card);
+        dealing = DealingStrategy.forName(env.config.dealingStrategy, env.util);
+        cardsInPlay = new BitSet(env.config.deckSize);
+        cardsInPlay.set(0, env.config.deckSize);
+        setsInPlay = (int) env.util.streamSets(cardsInPlay).count();
         checksets = false;
-        setsLock = new Object();
-        slots= new ArrayDeque<>();
-        cards= new ArrayDeque<>();
+        if (env.config.computerPlayers > 0) {
+            int aiThreads = Math.min(env.config.computerPlayers, Runtime.getRuntime().availableProcessors());
+            AtomicInteger aiThreadCount = new AtomicInteger();
+            aiScheduler = Executors.newScheduledThreadPool(aiThreads, task -> {
+                Thread thread = new Thread(task, "computers-" + aiThreadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            aiScheduler = null;
+        }
+        timers = new TimerWheel("timers", env.logger);
+        claims = new ClaimRing(players.length, env.config.featureSize);
+        batch = new ClaimRing.Claim[Math.max(1, players.length)];
+        pending = new BitSet(batch.length);
+        invalidated = new BitSet(batch.length);
+        claimsOnSlot = new BitSet[env.config.maxTableSize];
+        for (int slot = 0; slot < claimsOnSlot.length; slot++)
+            claimsOnSlot[slot] = new BitSet(batch.length);
+        claimOf = new int[players.length];
+        toWake = new BitSet(players.length);
 
     }
 
@@ -89,7 +166,7 @@ public class Dealer implements Runnable {
         env.logger.info("Thread dealer " + Thread.currentThread().getName() + " starting.");
         playerThreads = new Thread[players.length];
         for (int i = 0; i < players.length; i++) {
-            Thread currPlayer = new Thread(players[i]);
+            Thread currPlayer = GameThreads.newThread(env.config.virtualThreads, "player-" + i, players[i]);
             playerThreads[i] = currPlayer;
             currPlayer.start();
         }
@@ -102,26 +179,26 @@ public class Dealer implements Runnable {
         }
         announceWinners();
 
-        synchronized (Thread.currentThread()) {
-            try {
-                Thread.currentThread().sleep(env.config.endGamePauseMillies);
-            }
-            catch (InterruptedException  e){
-                System.out.println("97 + dealer "+ e );
-            }
+        try {
+            Thread.sleep(env.config.endGamePauseMillies);
+        }
+        catch (InterruptedException  e){
+            System.out.println("97 + dealer "+ e );
         }
         terminate();
+        returnRemainingClaims();
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
 
     }
 
     /**
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+     * It also ends as soon as the game is over, without waiting for the rest of the countdown.
      */
     private void timerLoop() {
         starttime = System.currentTimeMillis();
         reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis + 1000;
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!shouldFinish() && System.currentTimeMillis() < reshuffleTime && !shouldReshuffle()) {
             sleepUntilWokenOrTimeout();
             updateTimerDisplay(false);
             removeCardsFromTable();
@@ -135,191 +212,468 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         terminate = true;
-        // TODO implement
+        LockSupport.unpark(dealerThread);
+        if (aiScheduler != null)
+            aiScheduler.shutdownNow();
+        timers.shutdown();
         for (int i = players.length-1; i >= 0; i--) {
             players[i].terminate();
-            while (playerThreads[i].isAlive()){}
+            try {
+                playerThreads[i].join();
+            } catch (InterruptedException ignored) {
+            }
         }
         terminate =true;
     }
 
 
+    /**
+     * Returns the claims still in the ring when the game ends, so no one waits for their verdicts forever.
+     */
+    private void returnRemainingClaims() {
+        ClaimRing.Claim claim;
+        while ((claim = claims.poll()) != null)
+            setVerdict(claim, Verdict.STALE);
+        claims.release();
+    }
+
     /**
      * Check if the game should be terminated or the game end conditions are met.
      *
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || setsInPlay == 0;
+    }
+
+    /**
+     * Takes a card out of play, with the sets that could still be formed with it.
+     *
+     * @param card - the card id.
+     */
+    private void removeFromPlay(int card) {
+        cardsInPlay.clear(card);
+        setsInPlay -= env.util.findSetsWith(card, cardsInPlay, Integer.MAX_VALUE).size();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * The claims are handled in batches in two stages: the claims of the batch the players did not check themselves
+     * are checked first, then the claims are committed in turn on the dealer thread. A claim is committed only if none
+     * of its slots changed since the player read them.
      */
     private void removeCardsFromTable() {
-        // TODO implement
-        synchronized (setsLock) {
-            while (!cards.isEmpty()) {
-                int[] currCards = cards.remove();
-                int currPlayer = currCards[env.config.featureSize];
-                boolean nullFound = false;
-                for (int j = 0; j < env.config.featureSize; j++) {
-                    if (table.cardToSlot[currCards[j]] == null) {
-                        nullFound = true;
-                    }
-                }
-                if (nullFound) {
-                    for (int j = 0; j < env.config.featureSize; j++) {
-                        if (table.cardToSlot[currCards[j]]!=null){
-                            this.env.ui.removeToken(currPlayer, table.cardToSlot[currCards[j]]);
-                        }
-                    }
-                    players[currPlayer].penaltyPoint=2;
-                    synchronized (playerThreads[currPlayer]) {
-                        try {
-                            playerThreads[currPlayer].notifyAll();
-                        } catch (IllegalMonitorStateException e) {
-                            System.out.println("dealer 206" + e);
-                        }
-                    }
-                    return;
-                }
-                int [] set = new int[env.config.featureSize];
-                for (int k= 0 ; k<env.config.featureSize ; k++){
-                    set[k] = currCards[k];
-                }
-                if (env.util.testSet(set)) {
-
-                    for (int j = 0; j < env.config.featureSize; j++) {
-                        int slotNow= table.cardToSlot[currCards[j]];
-                        if (players[currPlayer].numOfTokens != 0) {
-                            this.env.ui.removeToken(currPlayer, table.cardToSlot[currCards[j]]);
-                            table.removeCard(table.cardToSlot[currCards[j]]);
-                        }
-                        if (deck.size()==0){
-                            for (int i=0 ; i<players.length ; i++){
-                                if (i!=currPlayer) {
-                                    if (players[i].tokens.contains(table.cardToSlot[set[j]])) {
-                                            players[i].tokens.remove(table.cardToSlot[set[j]]);
-                                            players[i].numOfTokens--;
-                                            
-                                    }
-                                }
-                    
-                            }
-                            env.ui.removeTokens(slotNow);
-                            
-                        }
-                    }
-                    players[currPlayer].penaltyPoint = 1;
-                }
-                else {
-                    players[currPlayer].penaltyPoint = -1;
-                }
-                synchronized (playerThreads[currPlayer]) {
-                    try {
-                        playerThreads[currPlayer].notifyAll();
-                    } catch (IllegalMonitorStateException e) {
-                        System.out.println("dealer 206" + e);
-                    }
-                }
+        int size;
+        while ((size = pollClaims()) > 0) {
+            checkClaims(size);
+            commitClaims();
+            claims.release();
+            wakePlayers();
+        }
+    }
 
+    /**
+     * Moves the claims published so far into the batch, and indexes them by their players and slots.
+     * A player has one claim in the ring at most, so the batch holds one claim of each player at most.
+     *
+     * @return - the number of claims in the batch.
+     */
+    private int pollClaims() {
+        Arrays.fill(claimOf, -1);
+        int size = 0;
+        ClaimRing.Claim claim;
+        while (size < batch.length && (claim = claims.poll()) != null) {
+            batch[size] = claim;
+            pending.set(size);
+            for (int slot : claim.slots)
+                claimsOnSlot[slot].set(size);
+            claimOf[claim.player] = size;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Checks the claims of the batch the players did not check themselves. The cards of a claim do not change, so the
+     * checks do not depend on the table and, for a large batch, are split between the threads of the common pool.
+     *
+     * @param size - the number of claims in the batch.
+     */
+    private void checkClaims(int size) {
+        int unchecked = 0;
+        for (int i = 0; i < size; i++) {
+            if (!batch[i].checked)
+                unchecked++;
+        }
+        if (env.config.parallelClaimChecks && unchecked >= Math.max(1, env.config.parallelClaimChecksThreshold)) {
+            int grain = Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+            ForkJoinPool.commonPool().invoke(new CheckClaimsTask(env.util, batch, 0, size, grain));
+        } else if (unchecked > 0) {
+            CheckClaimsTask.check(env.util, batch, 0, size);
+        }
+    }
+
+    /**
+     * Checks the unchecked claims of a range of the batch, by splitting the range in halves down to the given grain.
+     */
+    private static class CheckClaimsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // checks the cards of the claims (tasks are never serialized)
+        private final transient Util util;
+        private final transient ClaimRing.Claim[] batch;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private CheckClaimsTask(Util util, ClaimRing.Claim[] batch, int from, int to, int grain) {
+            this.util = util;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                check(util, batch, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CheckClaimsTask(util, batch, from, middle, grain),
+                    new CheckClaimsTask(util, batch, middle, to, grain));
+        }
+
+        private static void check(Util util, ClaimRing.Claim[] batch, int from, int to) {
+            for (int i = from; i < to; i++) {
+                ClaimRing.Claim claim = batch[i];
+                if (claim.checked)
+                    continue;
+                claim.legal = claim.cards.length == 3
+                        ? util.testSet(claim.cards[0], claim.cards[1], claim.cards[2])
+                        : util.testSet(claim.cards);
+                claim.checked = true;
             }
         }
     }
 
+    /**
+     * Commits the pending claims of the batch in a single pass over the players, so a burst of claims from some
+     * players does not hold back the claims of the others. Each player has one claim in the batch at most, and the
+     * player served first moves on with each batch.
+     */
+    private void commitClaims() {
+        for (int k = 0; k < players.length; k++) {
+            int index = claimOf[(nextPlayer + k) % players.length];
+            // a claim may have been returned already, as a set taken before it made it stale
+            if (index >= 0 && pending.get(index))
+                commitClaim(index);
+        }
+        nextPlayer = (nextPlayer + 1) % players.length;
+    }
+
+    /**
+     * Removes a claim of the batch from the pending claims.
+     *
+     * @param i - the index of the claim in the batch.
+     */
+    private void unindexClaim(int i) {
+        pending.clear(i);
+        for (int slot : batch[i].slots)
+            claimsOnSlot[slot].clear(i);
+    }
+
+    /**
+     * Returns the pending claims on the given slots to their players at once, as the slots were just taken.
+     *
+     * @param slots - the slots taken.
+     */
+    private void invalidateClaimsOn(int[] slots) {
+        for (int slot : slots)
+            invalidated.or(claimsOnSlot[slot]);
+        for (int i = invalidated.nextSetBit(0); i >= 0; i = invalidated.nextSetBit(i + 1)) {
+            unindexClaim(i);
+            returnClaim(batch[i]);
+        }
+        for (int i = invalidated.nextSetBit(0); i >= 0; i = invalidated.nextSetBit(i + 1))
+            wakePlayer(batch[i].player);
+        invalidated.clear();
+    }
+
+    /**
+     * Returns a stale claim to its player without judging it, removing the player's tokens from the slots which did
+     * not change. The player clears the tokens left on the other slots, from the table and the ui, once woken up.
+     *
+     * @param claim - the claim.
+     */
+    private void returnClaim(ClaimRing.Claim claim) {
+        for (int j = 0; j < env.config.featureSize; j++) {
+            if (table.slotVersion(claim.slots[j]) == claim.versions[j]){
+                table.removeToken(claim.player, claim.slots[j]);
+            }
+        }
+        setVerdict(claim, Verdict.STALE);
+    }
+
+    /**
+     * Sets the verdict of a claim for its player, and completes the future of the claim if it has one (see
+     * submitClaim).
+     *
+     * @param claim   - the claim.
+     * @param verdict - the verdict.
+     */
+    private void setVerdict(ClaimRing.Claim claim, Verdict verdict) {
+        players[claim.player].setVerdict(verdict);
+        if (claim.verdict != null) {
+            // the entry is reused once released, so it must not keep the future
+            CompletableFuture<Verdict> future = claim.verdict;
+            claim.verdict = null;
+            future.complete(verdict);
+        }
+    }
+
+    /**
+     * Applies the verdict of a pending claim to the table and the player, and wakes the player up.
+     * A claim is stale, and is not judged, if any of its slots changed since the player read its card.
+     * When the claim is a set, the other pending claims on its slots are returned to their players right away.
+     *
+     * @param index - the index of the claim in the batch.
+     */
+    private void commitClaim(int index) {
+        ClaimRing.Claim claim = batch[index];
+        int[] currCards = claim.cards;
+        int currPlayer = claim.player;
+        unindexClaim(index);
+        if (!table.isCurrent(claim.slots, claim.versions)) {
+            returnClaim(claim);
+        }
+        else if (claim.legal) {
+            // the slots did not change since the player read them, so the claimed cards are still on them
+            for (int slot : claim.slots)
+                table.removeToken(currPlayer, slot);
+            table.removeCards(claim.slots);
+            for (int card : currCards)
+                removeFromPlay(card);
+            if (deck.isEmpty()){
+                for (int slotNow : claim.slots)
+                    removeTokensFrom(slotNow, currPlayer);
+            }
+            setVerdict(claim, Verdict.SET);
+            invalidateClaimsOn(claim.slots);
+        }
+        else {
+            setVerdict(claim, Verdict.NOT_SET);
+        }
+        wakePlayer(currPlayer);
+    }
+
+    /**
+     * Submits a claim on behalf of a player, as if the player placed its tokens on the given slots. The dealer checks
+     * the claim, and the player gets the point or the penalty as for any other claim.
+     * The future is completed on the dealer thread, so its continuations should be quick or run asynchronously.
+     *
+     * @param player - the id of the player.
+     * @param slots  - the slots of the claimed cards.
+     * @return - the future verdict of the claim. It is STALE if a slot was empty or changed before the claim was
+     *           judged, and fails with an IllegalStateException if the player has a claim in flight or is frozen.
+     */
+    public CompletableFuture<Verdict> submitClaim(int player, int[] slots) {
+        if (player < 0 || player >= players.length)
+            throw new IllegalArgumentException("no such player: " + player);
+        if (slots.length != env.config.featureSize || Arrays.stream(slots).distinct().count() != slots.length
+                || Arrays.stream(slots).anyMatch(slot -> slot < 0 || slot >= env.config.maxTableSize))
+            throw new IllegalArgumentException("a claim needs " + env.config.featureSize + " distinct slots: "
+                    + Arrays.toString(slots));
+        CompletableFuture<Verdict> verdict = players[player].claim(slots);
+        if (verdict == null) {
+            verdict = new CompletableFuture<>();
+            verdict.completeExceptionally(
+                    new IllegalStateException("player " + (player + 1) + " has a claim in flight or is frozen"));
+        }
+        return verdict;
+    }
+
+    /**
+     * Removes the tokens of the players from a slot whose card was taken away for good.
+     *
+     * @param slot   - the slot.
+     * @param except - the id of a player whose tokens are left to the player, or -1 if none.
+     */
+    private void removeTokensFrom(int slot, int except) {
+        table.removeTokensFrom(slot, except);
+        env.ui.removeTokens(slot);
+    }
+
+    /**
+     * Marks a player to be woken up to handle the verdict of its claim, once the batch is released.
+     * Until then the player's entry is still in the ring, so the player must not make another claim.
+     *
+     * @param player - the id of the player.
+     */
+    private void wakePlayer(int player) {
+        toWake.set(player);
+    }
+
+    /**
+     * Wakes up the players whose claims were judged in the batch just released.
+     */
+    private void wakePlayers() {
+        for (int player = toWake.nextSetBit(0); player >= 0; player = toWake.nextSetBit(player + 1))
+            players[player].wakeUp();
+        toWake.clear();
+    }
+
 
         /**
          * Check if any cards can be removed from the deck and placed on the table.
          */
         private void placeCardsOnTable() {
             
-            int i = 0;
             ArrayList<Integer> shuflled = new ArrayList<Integer>();
-            while (i < env.config.tableSize) {
-                if (deck.size() == 0) {
-                    return;
-                }
+            for (int i = 0; i < env.config.tableSize; i++) {
                 if (table.slotToCard[i] == null) {
                     shuflled.add(i);
                 }
-                i = i + 1;
             }
             Collections.shuffle(shuflled);
-            Collections.shuffle(deck);
-            int j = 0;
-            while (j < shuflled.size() & deck.size()>0) {
-                table.placeCard(deck.remove(0), shuflled.remove(0));
-                if (table.countCards() == env.config.tableSize || deck.size()==0) {
-                    updateTimerDisplay(true);
+            // while the table is expanded, the cards of the spare column fill the empty slots before the deck does
+            int moved = moveSpareCards(shuflled);
+            int count = Math.min(shuflled.size() - moved, deck.size());
+            if (count > 0) {
+                // deal all the cards in one batch, the ui draws them one after the other
+                int[] cards = dealing.draw(deck, table, count);
+                int[] slots = new int[count];
+                for (int j = 0; j < count; j++) {
+                    slots[j] = shuflled.get(moved + j);
                 }
+                table.dealBatch(cards, slots);
+            }
+            if (moved + count > 0) {
+                updateTimerDisplay(true);
             }
+            expandTable();
 
         }
 
+    /**
+     * Moves cards from the spare column into empty slots of the grid, so the table shrinks back as sets are taken.
+     *
+     * @param emptySlots - the empty slots of the grid.
+     * @return - the number of cards moved, into the first empty slots.
+     */
+    private int moveSpareCards(List<Integer> emptySlots) {
+        int[] from = IntStream.range(env.config.tableSize, env.config.maxTableSize)
+                .filter(slot -> table.slotToCard[slot] != null).limit(emptySlots.size()).toArray();
+        if (from.length == 0) {
+            return 0;
+        }
+        for (int slot : from)
+            removeTokensFrom(slot, -1);
+        int[] to = new int[from.length];
+        for (int j = 0; j < from.length; j++)
+            to[j] = emptySlots.get(j);
+        table.dealBatch(table.removeCards(from), to);
+        return from.length;
+    }
+
+    /**
+     * Deals a spare column of cards if the table may grow, is not grown yet and has no set on it.
+     */
+    private void expandTable() {
+        if (!env.config.tableExpansion || setOnTable() || deck.isEmpty()) {
+            return;
+        }
+        int[] spare = IntStream.range(env.config.tableSize, env.config.maxTableSize)
+                .filter(slot -> table.slotToCard[slot] == null).toArray();
+        if (spare.length < env.config.maxTableSize - env.config.tableSize) {
+            return;
+        }
+        int count = Math.min(spare.length, deck.size());
+        table.dealBatch(dealing.draw(deck, table, count), Arrays.copyOf(spare, count));
+    }
+
     /**
      * This method if there is a set from the card that are
      * right now on the table.
      */
      
     private boolean setOnTable() {
-
-        int numOfCards= table.countCards() ;
-        if (numOfCards==0){
-            return false;
-        }
-        if (numOfCards == env.config.tableSize) {
-            if (env.util.findSets(Arrays.asList(table.slotToCard), 1).size() == 0) {
-                return false;
-            }
-        }
-        else {
-            Integer [] notNullCards = new Integer[numOfCards];
-            int k = 0;
-            for (int i=0 ; i<table.slotToCard.length ; i++){
-                if (table.slotToCard[i]!=null){
-                    notNullCards[k]=table.slotToCard[i];
-                    k=k+1;
-                }
-            }
-            if (env.util.findSets(Arrays.asList(notNullCards), 1).size() == 0) {
-                return false;
-            }
-        }
-        return true;
+        return table.countSets() > 0;
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Checks whether the table has no set and should be reshuffled without waiting for the turn timeout.
+     * The game ends instead when no set is left in play, so a reshuffle only happens when the deck has cards.
+     *
+     * @return - true iff the table should be reshuffled now.
      */
-    private void sleepUntilWokenOrTimeout() {
-        // TODO implement
+    private boolean shouldReshuffle() {
+        return dealing.reshufflesWithoutSet() && !deck.isEmpty() && !setOnTable();
+    }
 
-            if (reshuffleTime - System.currentTimeMillis() > env.config.turnTimeoutWarningMillis) {
-                try {
-                    synchronized (setsLock) {
-                        setsLock.wait(env.config.tableDelayMillis);
-                    }
-                } catch (InterruptedException  ignored) {
+    /**
+     * Called by a player after it published a claim, to wake the dealer up.
+     */
+    void claimPublished() {
+        checksets = true;
+        LockSupport.unpark(dealerThread);
+    }
 
-                    System.out.println(ignored);
-                }
-            }
-                else {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ignored) {
-                }
-            }
+    /**
+     * Sleep until a player sends a set to check, or until the next timer event, which the timer wheel fires.
+     * The claims are published before the flag is set, so clearing it here does not lose any of them.
+     */
+    private void sleepUntilWokenOrTimeout() {
+        long wakeTime = nextTimerEvent();
+        if (timerEvent == null || timerEvent.deadline() != wakeTime) {
+            if (timerEvent != null)
+                timerEvent.cancel();
+            timerEvent = wakeTime == Long.MAX_VALUE ? null : timers.schedule(wakeTime, this::timerEventDue);
+        }
+        while (!terminate && !checksets && !timerDue)
+            LockSupport.park(this);
+        checksets = false;
+        if (timerDue) {
+            timerDue = false;
+            timerEvent = null;
         }
+    }
 
+    /**
+     * Called by the timer wheel when the timer event the dealer sleeps until is due, to wake the dealer up.
+     */
+    private void timerEventDue() {
+        timerDue = true;
+        LockSupport.unpark(dealerThread);
+    }
 
+    /**
+     * Returns the time of the next timer event the dealer should wake up for: the next change of the displayed
+     * countdown (each second, or each hundredth of a second in the warning window), the start of the warning window,
+     * the next change of the displayed elapsed time, or the reshuffle.
+     */
+    private long nextTimerEvent() {
+        long now = System.currentTimeMillis();
+        if (env.config.turnTimeoutMillis > INDICATOR_TIME) {
+            long timeLeft = reshuffleTime - now;
+            boolean warn = timeLeft < env.config.turnTimeoutWarningMillis;
+            long waitTime = timeLeft % (warn ? 10 : 1000) + 1;
+            if (!warn)
+                waitTime = Math.min(waitTime, timeLeft - env.config.turnTimeoutWarningMillis + 1);
+            return now + Math.max(0, Math.min(waitTime, timeLeft));
+        }
+        if (env.config.turnTimeoutMillis == INDICATOR_TIME)
+            return now + 1000 - (now - starttime) % 1000;
+        return reshuffleTime;
+    }
 
     /**
      * Reset and/or update the countdown and the countdown display.
+     * The display is only updated when the time shown changes.
      */
     private void updateTimerDisplay(boolean reset) {
-        // TODO implement
         if (reset){
             reshuffleTime = Long.MAX_VALUE;
             starttime = System.currentTimeMillis();
@@ -328,13 +682,21 @@ public class Dealer implements Runnable {
             }
         }
         if(env.config.turnTimeoutMillis>INDICATOR_TIME){
-            long timeLeft = reshuffleTime-System.currentTimeMillis();
+            long timeLeft = Math.max(0, reshuffleTime-System.currentTimeMillis());
             boolean warn = timeLeft <env.config.turnTimeoutWarningMillis;
-            env.ui.setCountdown(timeLeft,warn);
+            long shown = warn ? timeLeft / 10 : timeLeft / 1000;
+            if (reset || shown != displayedTime || warn != displayedWarn) {
+                env.ui.setCountdown(timeLeft,warn);
+                displayedTime = shown;
+                displayedWarn = warn;
+            }
         }
         else if(env.config.turnTimeoutMillis==INDICATOR_TIME){
             long timePassed = System.currentTimeMillis()-starttime;
-            env.ui.setElapsed(timePassed);
+            if (reset || timePassed / 1000 != displayedTime) {
+                env.ui.setElapsed(timePassed);
+                displayedTime = timePassed / 1000;
+            }
         }
 
     }
@@ -343,33 +705,19 @@ public class Dealer implements Runnable {
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        // TODO implement
         for (int j=0 ; j<players.length ; j++) {
-            synchronized (players[j].pressLock) {
-                for (int k = 0; k < env.config.featureSize; k++) {
-
-                    if (players[j].tokens.size() > 0) {
-                        table.removeToken(j, players[j].tokens.remove());
-                    }
-                }
-
-                players[j].numOfTokens = 0;
-            }
-        }
-        int i = env.config.tableSize;
-        while (i>0){
-            if(table.slotToCard[i-1]!=null) {
-                int card = table.slotToCard[i - 1];
-                table.removeCard(i - 1);
-                deck.add(card);
+            players[j].pressLock.lock();
+            try {
+                table.removeTokens(players[j].id);
+            } finally {
+                players[j].pressLock.unlock();
             }
-            i--;
-        }
-        for (int j=0 ; j<players.length; j++){
-            players[j].numOfTokens=0;
-            players[j].tokens.clear();
         }
-        
+        int[] slots = IntStream.range(0, env.config.maxTableSize).map(i -> env.config.maxTableSize - 1 - i)
+                .filter(slot -> table.slotToCard[slot] != null).toArray();
+        for (int card : table.removeCards(slots))
+            deck.add(card);
+
         env.ui.removeTokens();
 
     }
@@ -407,6 +755,18 @@ public class Dealer implements Runnable {
     public void testRemoveCardsFrom(){
         removeCardsFromTable();
     }
+    public void testRemoveAllCardsFromTable(){
+        removeAllCardsFromTable();
+    }
+    public int testSetsInPlay(){
+        return setsInPlay;
+    }
+    public long testRecountSetsInPlay(){
+        return env.util.streamSets(cardsInPlay).count();
+    }
+    public boolean testShouldFinish(){
+        return shouldFinish();
+    }
     public int[] testAnnounceWinners(){
         int higestscore = 0;
         int numofwinners=0;
@@ -0,0 +1,128 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This interface decides which cards the dealer deals, and whether a table without a set is reshuffled right away
+ * instead of waiting for the turn timeout.
+ */
+public interface DealingStrategy {
+
+    /**
+     * Draws the cards to deal into the empty slots of the table.
+     *
+     * @param deck  - the dealer's deck.
+     * @param table - the table, with the cards already on it.
+     * @param count - the number of cards to draw.
+     * @return - the card ids drawn from the deck.
+     *
+     * @pre - count <= deck.size()
+     */
+    int[] draw(DrawPile deck, Table table, int count);
+
+    /**
+     * @return - true iff a table without a set should be reshuffled as soon as it is dealt.
+     */
+    boolean reshufflesWithoutSet();
+
+    /**
+     * Creates the strategy by its name in the configuration.
+     *
+     * @param name - one of Random, GuaranteedSet or Reshuffle.
+     * @param util - the game utilities.
+     * @return - the strategy.
+     */
+    static DealingStrategy forName(String name, Util util) {
+        switch (name) {
+            case "GuaranteedSet":
+                return new GuaranteedSet(util);
+            case "Reshuffle":
+                return new Reshuffle();
+            case "Random":
+                return new Uniform();
+            default:
+                throw new IllegalArgumentException("unknown dealing strategy: " + name);
+        }
+    }
+
+    /**
+     * Deals uniformly random cards, and leaves a table without a set until the turn timeout (the Random strategy of
+     * the configuration).
+     */
+    class Uniform implements DealingStrategy {
+
+        @Override
+        public int[] draw(DrawPile deck, Table table, int count) {
+            int[] cards = new int[count];
+            for (int i = 0; i < count; i++)
+                cards[i] = deck.draw();
+            return cards;
+        }
+
+        @Override
+        public boolean reshufflesWithoutSet() {
+            return false;
+        }
+    }
+
+    /**
+     * Deals uniformly random cards, and reshuffles a table without a set right away.
+     */
+    class Reshuffle extends Uniform {
+
+        @Override
+        public boolean reshufflesWithoutSet() {
+            return true;
+        }
+    }
+
+    /**
+     * Deals random cards, but if the table would have no set, swaps the last card dealt for a card of the deck which
+     * completes a set. If no card of the deck does, the table is reshuffled right away.
+     */
+    class GuaranteedSet extends Uniform {
+
+        private final Util util;
+
+        public GuaranteedSet(Util util) {
+            this.util = util;
+        }
+
+        @Override
+        public int[] draw(DrawPile deck, Table table, int count) {
+            int[] cards = super.draw(deck, table, count);
+            if (count == 0 || table.countSets() > 0)
+                return cards;
+
+            // a set among the dealt cards has a card dealt after all its other cards
+            BitSet dealt = table.cardsOnTable();
+            for (int card : cards) {
+                if (!util.findSetsWith(card, dealt, 1).isEmpty())
+                    return cards;
+                dealt.set(card);
+            }
+
+            int last = cards[count - 1];
+            dealt.clear(last);
+            deck.add(last);
+            int start = ThreadLocalRandom.current().nextInt(deck.size());
+            for (int i = 0; i < deck.size(); i++) {
+                int index = (start + i) % deck.size();
+                if (!util.findSetsWith(deck.get(index), dealt, 1).isEmpty()) {
+                    cards[count - 1] = deck.remove(index);
+                    return cards;
+                }
+            }
+            cards[count - 1] = deck.draw();
+            return cards;
+        }
+
+        @Override
+        public boolean reshufflesWithoutSet() {
+            return true;
+        }
+    }
+}
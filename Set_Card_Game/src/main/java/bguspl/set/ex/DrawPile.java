@@ -0,0 +1,90 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class holds the card ids left in the dealer's deck as a primitive array, in no particular order.
+ *
+ * @inv 0 <= size <= cards.length
+ */
+public class DrawPile {
+
+    /**
+     * The card ids in the pile (only the first size entries are valid).
+     */
+    private final int[] cards;
+
+    /**
+     * The number of cards in the pile.
+     */
+    private int size;
+
+    /**
+     * The class constructor.
+     *
+     * @param capacity - the maximal number of cards in the pile.
+     */
+    public DrawPile(int capacity) {
+        cards = new int[capacity];
+    }
+
+    /**
+     * @return - the number of cards in the pile.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - true iff there are no cards in the pile.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes a uniformly random card from the pile.
+     *
+     * @return - the card id drawn.
+     *
+     * @pre - the pile is not empty.
+     */
+    public int draw() {
+        return remove(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    /**
+     * @param index - the position of the card in the pile.
+     * @return - the card id in that position.
+     *
+     * @pre - 0 <= index < size()
+     */
+    public int get(int index) {
+        return cards[index];
+    }
+
+    /**
+     * Removes the card in the given position from the pile, by moving the last card into its place.
+     *
+     * @param index - the position of the card in the pile.
+     * @return - the card id removed.
+     *
+     * @pre - 0 <= index < size()
+     */
+    public int remove(int index) {
+        int card = cards[index];
+        cards[index] = cards[--size];
+        return card;
+    }
+
+    /**
+     * Returns a card to the pile.
+     *
+     * @param card - the card id.
+     *
+     * @pre - the card is not in the pile.
+     */
+    public void add(int card) {
+        cards[size++] = card;
+    }
+}
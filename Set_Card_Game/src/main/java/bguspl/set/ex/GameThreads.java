@@ -0,0 +1,70 @@
+package bguspl.set.ex;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * This class creates the threads of the players, either as platform threads or as virtual threads.
+ * Virtual threads are created through method handles, so the game still builds and runs on JDKs without them, and
+ * falls back to platform threads there.
+ */
+public final class GameThreads {
+
+    /**
+     * Thread.ofVirtual(), Thread.Builder.name(String) and Thread.Builder.unstarted(Runnable) (null if the JDK has no
+     * virtual threads).
+     */
+    private static final MethodHandle ofVirtual;
+    private static final MethodHandle builderName;
+    private static final MethodHandle builderUnstarted;
+
+    static {
+        MethodHandle[] handles = new MethodHandle[3];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> builderOfVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            handles[0] = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builderOfVirtual));
+            handles[1] = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class));
+            handles[2] = lookup.findVirtual(builder, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (ReflectiveOperationException e) {
+            handles = new MethodHandle[3];
+        }
+        ofVirtual = handles[0];
+        builderName = handles[1];
+        builderUnstarted = handles[2];
+    }
+
+    private GameThreads() {
+    }
+
+    /**
+     * @return - true iff the JDK can run virtual threads.
+     */
+    public static boolean virtualThreadsSupported() {
+        return builderUnstarted != null;
+    }
+
+    /**
+     * Creates an unstarted thread.
+     *
+     * @param virtual - true iff the thread should be a virtual thread (ignored if the JDK cannot run them).
+     * @param name    - the name of the thread.
+     * @param task    - the task the thread runs.
+     * @return - the thread.
+     */
+    public static Thread newThread(boolean virtual, String name, Runnable task) {
+        if (virtual && virtualThreadsSupported()) {
+            try {
+                Object builder = builderName.invoke(ofVirtual.invoke(), name);
+                return (Thread) builderUnstarted.invoke(builder, task);
+            } catch (UnsupportedOperationException ignored) {
+                // virtual threads are a preview feature of this JDK, and previews are not enabled
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot create a virtual thread", e);
+            }
+        }
+        return new Thread(task, name);
+    }
+}
@@ -0,0 +1,96 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class passes the key presses of a single player to the player thread through a fixed ring of slots.
+ * Only one thread at a time may offer presses (the ui for a human player, the scheduled presses for a computer
+ * player), and only the player thread polls them, so neither side locks, waits or allocates.
+ *
+ * @inv head <= tail <= head + presses.length
+ */
+public class KeyPressRing {
+
+    /**
+     * The slots pressed (the number of entries is a power of 2).
+     */
+    private final int[] presses;
+
+    /**
+     * The number of presses the ring can hold.
+     */
+    private final int capacity;
+
+    /**
+     * The sequence number of the next press to poll (only written by the player thread).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next press to offer (only written by the offering thread).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The last head seen by the offering thread, and the last tail seen by the player thread, so each side reads the
+     * other's counter only when the ring looks full or empty.
+     */
+    private long knownHead;
+    private long knownTail;
+
+    /**
+     * The class constructor.
+     *
+     * @param capacity - the number of presses the ring can hold.
+     */
+    public KeyPressRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        presses = new int[Integer.highestOneBit(this.capacity * 2 - 1)];
+    }
+
+    /**
+     * Adds a press to the ring, if it has room.
+     *
+     * @param slot - the slot pressed.
+     * @return - true iff the press was added.
+     */
+    public boolean offer(int slot) {
+        long sequence = tail.get();
+        if (sequence - knownHead >= capacity) {
+            knownHead = head.get();
+            if (sequence - knownHead >= capacity)
+                return false;
+        }
+        presses[index(sequence)] = slot;
+        tail.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest press out of the ring (player thread only).
+     *
+     * @return - the slot pressed, or -1 if the ring is empty.
+     */
+    public int poll() {
+        long sequence = head.get();
+        if (sequence >= knownTail) {
+            knownTail = tail.get();
+            if (sequence >= knownTail)
+                return -1;
+        }
+        int slot = presses[index(sequence)];
+        head.lazySet(sequence + 1);
+        return slot;
+    }
+
+    /**
+     * @return - the number of presses in the ring.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & (presses.length - 1);
+    }
+}
@@ -2,7 +2,14 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class manages the players' threads and data
@@ -31,12 +38,12 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * True iff the AI (computer) player stopped pressing keys until its tokens are cleared.
      */
-    private Thread aiThread;
+    private final AtomicBoolean aiPaused = new AtomicBoolean();
 
     /**
      * True iff the player is human (not a computer player).
@@ -55,29 +62,46 @@ public class Player implements Runnable {
 
     private int [] cards;
 
-    public ArrayDeque<Integer> tokens;
+    // the slots of the cards in the player's claim
+    private final int[] slots;
 
-    boolean sendToDealer;
-    public int numOfTokens;
+    // the versions of the slots when the player read the cards in them
+    private final int[] versions;
 
     private Dealer dealer;
 
-    final Object locker = new Object();
-
-    public int penaltyPoint;
-
     public long freezeTimes;
 
     public boolean toFreeze;
 
-    public Object pressLock;
-    public Object waitLock;
-    public Object alreadyExistsLock;
+    // makes the player's token changes and claims atomic (the tokens themselves are kept by the table)
+    public final ReentrantLock pressLock;
+
+    /**
+     * The states of a player along a claim: the player places tokens (IDLE, SELECTING), its claim waits for the
+     * dealer (CLAIMED), the player handles the verdict (VERDICT) and is frozen for a point or a penalty (FROZEN).
+     * Only the key presses move the player out of IDLE and SELECTING, only the dealer out of CLAIMED, only the
+     * player thread out of VERDICT, and only the end of the freeze out of FROZEN.
+     */
+    public enum State {
+        IDLE, SELECTING, CLAIMED, VERDICT, FROZEN
+    }
+
+    // the key presses waiting for the player thread
+    private final KeyPressRing presses;
+
+    // the press a computer player waits to put in its full queue, or -1 if none (only accessed by its press task)
+    private int waitingPress = -1;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+
+    // the verdict of the last claim, set by the dealer before it moves the player to VERDICT
+    private volatile Verdict verdict;
 
-    private int point = 1;
-    private int penalty= -1;
-    private int nullSet= 2;
-    private int beforeAnyAction = 0;
+    // the time the last claim was made, and the number and total time of the verdicts, in nanoseconds
+    private volatile long claimedAt;
+    private volatile long verdicts;
+    private volatile long verdictNanos;
 
     /**
      * The class constructor.
@@ -94,14 +118,12 @@ public class Player implements Runnable {
         this.id = id;
         this.human = human;
         this.dealer = dealer;
-        //tokens = new ArrayDeque(3);
         toFreeze = false;
-        numOfTokens = 0;
-        cards = new int[env.config.featureSize+1];
-        cards[env.config.featureSize]= id;
-        pressLock = new Object();
-        waitLock = new Object();
-        sendToDealer = false;
+        cards = new int[env.config.featureSize];
+        slots = new int[env.config.featureSize];
+        versions = new int[env.config.featureSize];
+        pressLock = new ReentrantLock();
+        presses = new KeyPressRing(env.config.keyPressQueueSize);
     }
 
     /**
@@ -116,213 +138,321 @@ public class Player implements Runnable {
             createArtificialIntelligence();
         }
         while (!terminate) {
-            notifyDealer();
-            waitUntilWokeUp();
+            handleKeyPresses();
+            if (state.get() == State.VERDICT) {
+                handleVerdict();
+            } else if (presses.size() == 0) {
+                // the key presses and the dealer's verdicts unpark the player thread
+                LockSupport.park(this);
+            }
         }
-        if (!human) try {
-            aiThread.join();
-        } catch (InterruptedException ignored) {
+        if (verdicts > 0) {
+            env.logger.info("player " + (id + 1) + " average verdict latency "
+                    + TimeUnit.NANOSECONDS.toMicros(verdictNanos / verdicts) + "us over " + verdicts + " claims.");
         }
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Starts the AI (computer) player: its key presses run as a task on the dealer's shared scheduler, which puts a
+     * press in the player's key press queue and reschedules itself. When the queue is full, the press is dropped, or
+     * if the queue blocks, the task tries the same press again the next time, so it never holds a scheduler thread.
+     * While the player has a claim in flight or is frozen, the task is not rescheduled, and resumes when the tokens
+     * are cleared.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
-            System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
-            try {
-                Thread.sleep(env.config.tableDelayMillis*10);
-            } catch (InterruptedException e) {
-                System.out.println(e);
-            }
-            while (!terminate) {
-                synchronized (aiThread) {
-                int rnd =(int) (Math.random() * (env.config.tableSize));
-                keyPressed(rnd);
-                    try {
-                        while (numOfTokens == env.config.featureSize || tokens.size() == env.config.featureSize) {
-                            aiThread.wait();
-                        }
-                    } catch (InterruptedException ignored) {
-                        //System.out.println(ignored + " player131");
-                    }
-                }
+        scheduleKeyPress(env.config.tableDelayMillis*10);
+    }
+
+    /**
+     * Schedules the next key press of the computer player.
+     *
+     * @param delayMillis - the delay before the press, at least a millisecond so the presses do not hog the scheduler.
+     */
+    private void scheduleKeyPress(long delayMillis) {
+        try {
+            dealer.aiScheduler.schedule(this::pressRandomKey, Math.max(1, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // the game is over
+        }
+    }
+
+    private void pressRandomKey() {
+        if (terminate) {
+            return;
+        }
+        int slot = waitingPress >= 0 ? waitingPress : ThreadLocalRandom.current().nextInt(env.config.maxTableSize);
+        waitingPress = -1;
+        if (!queueKeyPress(slot) && env.config.keyPressQueueBlocks) {
+            waitingPress = slot;
+        }
+        if (!selecting()) {
+            aiPaused.set(true);
+            // the player may have gone back to selecting before the pause was seen
+            if (!selecting() || !aiPaused.compareAndSet(true, false)) {
+                return;
             }
-            System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
-        }, "computer-" + id);
-        aiThread.start();
+        }
+        scheduleKeyPress(env.config.computerPressIntervalMillis);
+    }
+
+    /**
+     * @return - true iff the player may place and remove tokens, i.e. it has no claim in flight and is not frozen.
+     */
+    private boolean selecting() {
+        State current = state.get();
+        return current == State.IDLE || current == State.SELECTING;
+    }
+
+    /**
+     * Lets the computer player press keys again, after its tokens were cleared.
+     */
+    private void resumeArtificialIntelligence() {
+        if (aiPaused.compareAndSet(true, false)) {
+            scheduleKeyPress(env.config.computerPressIntervalMillis);
+        }
     }
 
     /**
      * Called when the game should be terminated due to an external event.
      */
     public void terminate() {
-        // TODO implement
         terminate= true;
         playerThread.interrupt();
-        if (!human){
-            aiThread.interrupt();
-        }
+        LockSupport.unpark(playerThread);
     }
 
 
 
     /**
      * This method is called when a key is pressed.
+     * The press is queued for the player thread, and dropped if the queue is full, so the caller never waits.
      *
      * @param slot - the slot corresponding to the key pressed.
      */
-     public void keyPressed(int slot) {
-         // TODO implement
-         synchronized (pressLock) {
-             if (numOfTokens == env.config.featureSize || tokens.size() == env.config.featureSize) {
+    public void keyPressed(int slot) {
+        queueKeyPress(slot);
+    }
+
+    /**
+     * Puts a key press in the player's queue, and wakes the player thread up to handle it.
+     *
+     * @param slot - the slot pressed.
+     * @return - true iff the press was queued, false if the queue is full.
+     */
+    private boolean queueKeyPress(int slot) {
+        if (!presses.offer(slot)) {
+            return false;
+        }
+        LockSupport.unpark(playerThread);
+        return true;
+    }
+
+    /**
+     * Handles the key presses queued so far (player thread only).
+     */
+    void handleKeyPresses() {
+        for (int slot; (slot = presses.poll()) >= 0; ) {
+            pressKey(slot);
+        }
+    }
+
+    /**
+     * Places or removes the player's token on a slot, and claims the cards under the tokens once they are full.
+     *
+     * @param slot - the slot pressed.
+     */
+     private void pressKey(int slot) {
+         pressLock.lock();
+         try {
+             if (!selecting()) {
                  return;
              }
              if (table.slotToCard[slot]==null){
                  return;
              }
-             boolean alreadySelected = false;
-             if (tokens.contains(slot)) {
-                 //int size = tokens.size();
-                 tokens.remove(slot);
-                 alreadySelected = true;
-                 env.ui.removeToken(id, slot);
-                 numOfTokens--;
-
+             if (table.removeToken(id, slot)) {
+                 state.set(numOfTokens() == 0 ? State.IDLE : State.SELECTING);
+                 return;
              }
-             if (!alreadySelected) {
-                 if (table.slotToCard[slot] == null) {
-                     return;
-                 }
-                 numOfTokens++;
-                 table.placeToken(id, slot);
-                 env.ui.placeToken(id, slot);
-                 tokens.add(slot);
-                 if (numOfTokens == env.config.featureSize) {
-                     sendToDealer = true;
-                     for (int i=0 ; i<env.config.featureSize ; i++){
-                         int currSlot = tokens.removeFirst();
-                         if (table.slotToCard[currSlot]!=null) {
-                             cards[i] = table.slotToCard[currSlot];
-                             tokens.add(currSlot);
-                         }
-                     }
-                     numOfTokens= tokens.size();
-                     if( numOfTokens != env.config.featureSize){
-                         return;
-                     }
-                     dealer.cards.add(cards);
-                     synchronized (waitLock) {
-                         try {
-                             waitLock.notifyAll();
-                         } catch (IllegalMonitorStateException e) {
-                             System.out.println(e);
-                         }
+             table.placeToken(id, slot);
+             if (numOfTokens() == env.config.featureSize) {
+                 int read = 0;
+                 for (long tokens = table.tokens(id); tokens != 0; tokens &= tokens - 1) {
+                     int currSlot = Long.numberOfTrailingZeros(tokens);
+                     if (readSlot(read, currSlot)) {
+                         read++;
+                     } else {
+                         table.removeToken(id, currSlot);
                      }
                  }
+                 if (read == env.config.featureSize) {
+                     // check the set here, so the dealer only has to check the slots did not change since
+                     boolean legal = env.config.featureSize == 3
+                             ? env.util.testSet(cards[0], cards[1], cards[2])
+                             : env.util.testSet(cards);
+                     publishClaim(true, legal, null);
+                     return;
+                 }
              }
+             state.set(numOfTokens() == 0 ? State.IDLE : State.SELECTING);
+         } finally {
+             pressLock.unlock();
          }
      }
+
     /**
-     * This method is called when a player press a key.
-     * if the player has now 3 tokens, and now the player wait until
-     * the dealer's response.
+     * Reads the card on a slot, with the version of the slot, into the player's claim (the player holds pressLock).
+     *
+     * @param i    - the index of the card in the claim.
+     * @param slot - the slot.
+     * @return - true iff the slot has a card.
      */
-     public void waitUntilWokeUp(){
-         if (terminate){
-             return;
-         }
-             synchronized (waitLock){
-                 try {
-                     while (!sendToDealer) {
-                         waitLock.wait();
-                     }
-                 }
-                 catch (InterruptedException  e){
-
-                     //Thread.currentThread().interrupt();
-                     //System.out.println(e);
+    private boolean readSlot(int i, int slot) {
+        // read the version first, so the dealer sees any change of the card read after it
+        int version = table.slotVersion(slot);
+        Integer card = table.slotToCard[slot];
+        if (card == null) {
+            return false;
+        }
+        cards[i] = card;
+        slots[i] = slot;
+        versions[i] = version;
+        return true;
+    }
 
-                 }
-         }
-         sendToDealer=false;
-     }
+    /**
+     * Claims the cards in the given slots, as if the player placed its tokens on them instead of its current tokens.
+     * The player does not check the claim, the dealer does.
+     *
+     * @param claimed - the slots of the claimed cards.
+     * @return - the future verdict of the claim, or null if the player has a claim in flight or is frozen.
+     */
+    CompletableFuture<Verdict> claim(int[] claimed) {
+        pressLock.lock();
+        try {
+            if (!selecting()) {
+                return null;
+            }
+            for (int i = 0; i < env.config.featureSize; i++) {
+                if (!readSlot(i, claimed[i])) {
+                    return CompletableFuture.completedFuture(Verdict.STALE);
+                }
+            }
+            removeTokensFromUi(table.removeTokens(id));
+            for (int slot : claimed) {
+                table.placeToken(id, slot);
+            }
+            CompletableFuture<Verdict> verdict = new CompletableFuture<>();
+            publishClaim(false, false, verdict);
+            return verdict;
+        } finally {
+            pressLock.unlock();
+        }
+    }
 
+    /**
+     * Publishes the claim of the player's cards, slots and versions to the dealer (the player holds pressLock).
+     *
+     * @param checked - true iff the player checked the claim.
+     * @param legal   - true iff the player found the claim to be a legal set.
+     * @param verdict - the future to complete with the verdict, or null if no one waits for it.
+     */
+    private void publishClaim(boolean checked, boolean legal, CompletableFuture<Verdict> verdict) {
+        // the dealer may judge the claim as soon as it is published
+        claimedAt = System.nanoTime();
+        state.set(State.CLAIMED);
+        if (checked) {
+            dealer.claims.publish(id, cards, slots, versions, legal);
+        } else {
+            dealer.claims.publishUnchecked(id, cards, slots, versions, verdict);
+        }
+        dealer.claimPublished();
+    }
 
     /**
-     * This method is called when a player press a key.
-     * if the player has now 3 tokens, the dealer checks if the player has set,
-     * else, the dealer does nothing.
+     * Handles the verdict of the player's claim: a point or a penalty freezes the player, and a stale claim just
+     * clears its tokens. The player is back to IDLE once the freeze ends.
      */
-    public void notifyDealer() {
-        if (numOfTokens != env.config.featureSize) {
+    private void handleVerdict() {
+        if (terminate) {
             return;
         }
-            synchronized (dealer.setsLock) {
-                dealer.checksets = true;
-                try {
-                    dealer.setsLock.notifyAll();
-                } catch (IllegalMonitorStateException e) {
-                    System.out.println(e + " 208 Player");
-                }
-            }
-            try {
-                while (penaltyPoint == beforeAnyAction) {
-                    synchronized (playerThread) {
-                        playerThread.wait();
-                    }
-                }
-            } catch (InterruptedException e) {
-                //System.out.println(e + "198 player");
-            }
-            if (penaltyPoint == point) {
+        switch (verdict) {
+            case SET:
+                state.set(State.FROZEN);
                 toFreeze = true;
                 freezeTimes = System.currentTimeMillis() + env.config.pointFreezeMillis;
                 point();
-            }
-            if (penaltyPoint == penalty) {
+                break;
+            case NOT_SET:
+                state.set(State.FROZEN);
                 toFreeze = true;
                 freezeTimes = System.currentTimeMillis() + env.config.penaltyFreezeMillis;
                 penalty();
-            }
-            if (penaltyPoint==nullSet){
-                numOfTokens = 0;
-                tokens.clear();
-                penaltyPoint=beforeAnyAction;
+                break;
+            default:
+                clearTokens();
                 if (!human) {
-                synchronized (aiThread){
-                        try {
-                            aiThread.notifyAll();
-                        } catch (IllegalMonitorStateException e) {
-                            System.out.println(e);
-                        }
-                    }
+                    resumeArtificialIntelligence();
                 }
+        }
+    }
 
-            }
+    /**
+     * Called by the dealer to set the verdict of the player's claim, before it wakes the player up.
+     *
+     * @param verdict - the verdict.
+     */
+    void setVerdict(Verdict verdict) {
+        this.verdict = verdict;
+    }
 
+    /**
+     * Called by the dealer once the verdict of the player's claim is set, to wake the player up.
+     */
+    public void wakeUp() {
+        if (state.compareAndSet(State.CLAIMED, State.VERDICT)) {
+            verdictNanos += System.nanoTime() - claimedAt;
+            verdicts++;
+            LockSupport.unpark(playerThread);
+        }
     }
 
+    /**
+     * @return - the current state of the player.
+     */
+    public State getState() {
+        return state.get();
+    }
 
-    public boolean freezePlayer() {
-        int sleepTime = 300;
-        if (freezeTimes >= System.currentTimeMillis()) {
-            long timeLeft = freezeTimes - System.currentTimeMillis();
-            env.ui.setFreeze(id, timeLeft);
-            try {
-                Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                //System.out.println(e);
-            }
-            return false;
-        } else {
+    /**
+     * @return - the average time from the player's claims until the dealer set their verdicts, in nanoseconds, or 0
+     *           if no claim was judged yet.
+     */
+    public long averageVerdictLatencyNanos() {
+        long count = verdicts;
+        return count == 0 ? 0 : verdictNanos / count;
+    }
+
+
+
+    /**
+     * Freezes the player until freezeTimes, and then runs the given task. The freeze runs on the dealer's timer
+     * wheel, which updates the freeze display at each whole second left, so no thread waits for it to end.
+     *
+     * @param unfreeze - the task to run when the freeze ends.
+     */
+    private void freezePlayer(Runnable unfreeze) {
+        long timeLeft = freezeTimes - System.currentTimeMillis();
+        if (timeLeft <= 0) {
             env.ui.setFreeze(id, 0);
-            return true;
+            unfreeze.run();
+            return;
         }
+        env.ui.setFreeze(id, timeLeft);
+        dealer.timers.schedule(freezeTimes - (timeLeft - 1) / 1000 * 1000, () -> freezePlayer(unfreeze));
     }
 
 
@@ -333,41 +463,17 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() {
-        // TODO implement
         if (toFreeze) {
-            if (!human) {
-                synchronized (aiThread) {
-                    score++;
-                    env.ui.setScore(id, score);
-                    //int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-                    while (!freezePlayer()) {
-                    }
-                    penaltyPoint = beforeAnyAction;
-                    synchronized (pressLock) {
-                        tokens.clear();
-                        numOfTokens = 0;
-                    }
-                    try {
-                        aiThread.notifyAll();
-                    } catch (IllegalMonitorStateException e) {
-                        System.out.println(e + "253");
-                    }
-                }
-            } else {
-                score++;
-                env.ui.setScore(id, score);
-                //int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-                while (!freezePlayer()) {
-                }
-                penaltyPoint = beforeAnyAction;
-                synchronized (pressLock) {
-
-                    tokens.clear();
-                    numOfTokens = 0;
-                }
-            }
             toFreeze = false;
-
+            score++;
+            env.ui.setScore(id, score);
+            //int ignored = table.countCards(); // this part is just for demonstration in the unit tests
+            freezePlayer(() -> {
+                clearTokens();
+                if (!human) {
+                    resumeArtificialIntelligence();
+                }
+            });
         }
     }
 
@@ -376,43 +482,54 @@ public class Player implements Runnable {
      */
     public void penalty() {
         if (toFreeze) {
-            if (!human) {
-                synchronized (aiThread) {
-                    while (!freezePlayer()) {
-                    }
-                    for (int i = 0; i < env.config.featureSize; i++) {
-                        //this.env.ui.removeToken(id, tokens.remove());
-                        if (table.cardToSlot[cards[i]] != null) {
-                            this.env.ui.removeToken(id, table.cardToSlot[cards[i]]);
-                        }
-                    }
-                    synchronized (pressLock) {
-                        numOfTokens = 0;
-                        penaltyPoint = beforeAnyAction;
-                        tokens.clear();
-                    }
-                    try {
-                        aiThread.notifyAll();
-                    } catch (IllegalMonitorStateException e) {
-                        System.out.println(e);
-                    }
+            toFreeze = false;
+            freezePlayer(this::removeTokensAfterPenalty);
+        }
 
-                }
-            }
-            else{
-                while (!freezePlayer()) {}
-                int tokensSize = tokens.size();
-                synchronized (pressLock){
-                for (int i = 0; i < tokensSize; i++) {
-                    this.env.ui.removeToken(id, tokens.remove());
-                }
-                    numOfTokens = 0;
-                    penaltyPoint = beforeAnyAction;
-                    tokens.clear();
-                }
-            }
+    }
+
+    private void removeTokensAfterPenalty() {
+        pressLock.lock();
+        try {
+            removeTokensFromUi(table.removeTokens(id));
+            state.set(State.IDLE);
+        } finally {
+            pressLock.unlock();
+        }
+        if (!human) {
+            resumeArtificialIntelligence();
         }
+    }
 
+    /**
+     * Removes the player's tokens from the ui.
+     *
+     * @param tokens - the slots of the tokens, as a bitmask.
+     */
+    private void removeTokensFromUi(long tokens) {
+        for (; tokens != 0; tokens &= tokens - 1) {
+            env.ui.removeToken(id, Long.numberOfTrailingZeros(tokens));
+        }
+    }
+
+    /**
+     * Removes all the player's tokens, from the table and the ui, and lets the player select cards again.
+     */
+    public void clearTokens() {
+        pressLock.lock();
+        try {
+            removeTokensFromUi(table.removeTokens(id));
+            state.set(State.IDLE);
+        } finally {
+            pressLock.unlock();
+        }
+    }
+
+    /**
+     * @return - the number of tokens the player has on the table.
+     */
+    public int numOfTokens() {
+        return table.countTokens(id);
     }
 
     public int[] getCardsArray(){
@@ -2,9 +2,12 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
 /**
@@ -29,8 +32,35 @@ public class Table {
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
 
-    private final Object someLock;
+    /**
+     * The tokens of each player, as a bitmask of slots.
+     */
+    private final AtomicLongArray playerTokens;
+
+    /**
+     * The players with a token on each slot, as a bitmask of player ids spread over words (slot * words + id / 64).
+     */
+    private final AtomicLongArray slotTokens;
+
+    /**
+     * The number of words in the bitmask of players of each slot.
+     */
+    private final int words;
+
+    /**
+     * The legal sets among the cards currently on the table, kept up to date by placeCard and removeCard.
+     */
+    private final List<int[]> sets;
+
+    /**
+     * The cards currently on the table, as a bitset of card ids.
+     */
+    private final BitSet cardsOnTable;
 
+    /**
+     * The version of each slot, incremented whenever a card is placed in the slot or removed from it.
+     */
+    private final AtomicIntegerArray slotVersions;
 
     /**
      * Constructor for testing.
@@ -44,7 +74,15 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        someLock = new Object();
+        playerTokens = new AtomicLongArray(env.config.players);
+        words = (env.config.players + Long.SIZE - 1) / Long.SIZE;
+        slotTokens = new AtomicLongArray(Math.max(1, slotToCard.length * words));
+        sets = new ArrayList<>();
+        cardsOnTable = new BitSet(cardToSlot.length);
+        slotVersions = new AtomicIntegerArray(slotToCard.length);
+        for (Integer card : slotToCard)
+            if (card != null)
+                addSetsWith(card);
     }
 
     /**
@@ -54,19 +92,24 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new Integer[env.config.maxTableSize], new Integer[env.config.deckSize]);
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        getSets().forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
+            sb.append("slots: ").append(slots).append(" features: [");
+            for (int i = 0; i < set.length; ++i) {
+                sb.append(i == 0 ? "[" : ", [");
+                for (int j = 0; j < env.config.featureCount; ++j)
+                    sb.append(j == 0 ? "" : ", ").append(env.config.feature(set[i], j));
+                sb.append("]");
+            }
+            System.out.println(sb.append("]"));
         });
     }
 
@@ -83,6 +126,95 @@ public class Table {
         return cards;
     }
 
+    /**
+     * Count the number of legal sets among the cards currently on the table.
+     *
+     * @return - the number of sets on the table.
+     */
+    public int countSets() {
+        synchronized (sets) {
+            return sets.size();
+        }
+    }
+
+    /**
+     * Returns one of the legal sets among the cards currently on the table.
+     *
+     * @return - the sorted card ids of a set, or null if there is no set on the table.
+     */
+    public int[] anySet() {
+        synchronized (sets) {
+            return sets.isEmpty() ? null : sets.get(0).clone();
+        }
+    }
+
+    /**
+     * Returns all the legal sets among the cards currently on the table.
+     *
+     * @return - a list of the sorted card ids of each set.
+     */
+    public List<int[]> getSets() {
+        synchronized (sets) {
+            return sets.stream().map(int[]::clone).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the version of a slot. A player should read it before reading the card in the slot, so a change of the
+     * card is seen as a change of the version.
+     *
+     * @param slot - the slot.
+     * @return - the current version of the slot.
+     */
+    public int slotVersion(int slot) {
+        return slotVersions.get(slot);
+    }
+
+    /**
+     * Checks that none of the slots changed since their versions were read.
+     *
+     * @param slots    - the slots.
+     * @param versions - the version read for each slot.
+     * @return - true iff every slot still has the version read.
+     */
+    public boolean isCurrent(int[] slots, int[] versions) {
+        for (int i = 0; i < slots.length; ++i)
+            if (slotVersions.get(slots[i]) != versions[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the cards currently on the table.
+     *
+     * @return - a copy of the bitset of the card ids on the table.
+     */
+    public BitSet cardsOnTable() {
+        synchronized (sets) {
+            return (BitSet) cardsOnTable.clone();
+        }
+    }
+
+    /**
+     * Adds the card to the cards on the table, with the sets it forms with them.
+     */
+    private void addSetsWith(int card) {
+        synchronized (sets) {
+            sets.addAll(env.util.findSetsWith(card, cardsOnTable, Integer.MAX_VALUE));
+            cardsOnTable.set(card);
+        }
+    }
+
+    /**
+     * Removes the card from the cards on the table, with the sets that contain it.
+     */
+    private void removeSetsWith(int card) {
+        synchronized (sets) {
+            sets.removeIf(set -> Arrays.stream(set).anyMatch(other -> other == card));
+            cardsOnTable.clear(card);
+        }
+    }
+
     /**
      * Places a card on the table in a grid slot.
      * @param card - the card id to place in the slot.
@@ -97,6 +229,8 @@ public class Table {
 
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        slotVersions.incrementAndGet(slot);
+        addSetsWith(card);
 
         // TODO implement
         env.ui.placeCard(card , slot);
@@ -116,19 +250,63 @@ public class Table {
         int card = slotToCard[slot];
         slotToCard[slot]=null;
         cardToSlot[card]= null;
+        slotVersions.incrementAndGet(slot);
+        removeSetsWith(card);
+    }
+
+    /**
+     * Places a batch of cards on the table at once, and notifies the ui once. Unlike placeCard, it does not wait for
+     * the table delay: the ui staggers drawing the cards instead.
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which to place each card.
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void dealBatch(int[] cards, int[] slots) {
+        synchronized (sets) {
+            for (int i = 0; i < cards.length; ++i) {
+                cardToSlot[cards[i]] = slots[i];
+                slotToCard[slots[i]] = cards[i];
+                slotVersions.incrementAndGet(slots[i]);
+                addSetsWith(cards[i]);
+            }
+        }
+        env.ui.placeCards(cards, slots);
+    }
+
+    /**
+     * Removes the cards from a batch of slots at once, and notifies the ui once. Unlike removeCard, it does not wait
+     * for the table delay: the ui staggers clearing the slots instead.
+     * @param slots - the slots from which to remove the cards.
+     * @return      - the card ids removed, one per slot.
+     *
+     * @pre - there is a card in each of the slots.
+     */
+    public int[] removeCards(int[] slots) {
+        int[] cards = new int[slots.length];
+        synchronized (sets) {
+            for (int i = 0; i < slots.length; ++i) {
+                cards[i] = slotToCard[slots[i]];
+                slotToCard[slots[i]] = null;
+                cardToSlot[cards[i]] = null;
+                slotVersions.incrementAndGet(slots[i]);
+                removeSetsWith(cards[i]);
+            }
+        }
+        env.ui.removeCards(slots);
+        return cards;
     }
 
     /**
      * Places a player token on a grid slot.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     *
+     * @pre - slot < 64
      */
     public void placeToken(int player, int slot) {
-
-        // TODO implement
-        synchronized (someLock){
-
-        }
+        playerTokens.accumulateAndGet(player, 1L << slot, (tokens, bit) -> tokens | bit);
+        slotTokens.accumulateAndGet(slot * words + player / Long.SIZE, 1L << (player % Long.SIZE), (players, bit) -> players | bit);
         env.ui.placeToken(player,slot);
     }
 
@@ -138,10 +316,66 @@ public class Table {
      * @param slot   - the slot from which to remove the token.
      * @return       - true iff a token was successfully removed.
      */
-
     public boolean removeToken(int player, int slot) {
-        
+        if ((playerTokens.getAndAccumulate(player, ~(1L << slot), (tokens, mask) -> tokens & mask) & 1L << slot) == 0)
+            return false;
+        slotTokens.accumulateAndGet(slot * words + player / Long.SIZE, ~(1L << (player % Long.SIZE)), (players, mask) -> players & mask);
         env.ui.removeToken(player , slot);
         return true;
     }
+
+    /**
+     * Removes all the tokens of a player (without updating the ui).
+     * @param player - the player the tokens belong to.
+     * @return       - the slots the tokens were on, as a bitmask.
+     */
+    public long removeTokens(int player) {
+        long tokens = playerTokens.getAndSet(player, 0);
+        for (long left = tokens; left != 0; left &= left - 1) {
+            int slot = Long.numberOfTrailingZeros(left);
+            slotTokens.accumulateAndGet(slot * words + player / Long.SIZE, ~(1L << (player % Long.SIZE)), (players, mask) -> players & mask);
+        }
+        return tokens;
+    }
+
+    /**
+     * Removes the tokens of all the players but one from a grid slot (without updating the ui).
+     * @param slot   - the slot from which to remove the tokens.
+     * @param except - the id of the player whose token stays, or -1 if none.
+     */
+    public void removeTokensFrom(int slot, int except) {
+        for (int word = 0; word < words; word++) {
+            long keep = except / Long.SIZE == word && except >= 0 ? 1L << (except % Long.SIZE) : 0;
+            long players = slotTokens.getAndAccumulate(slot * words + word, keep, (current, kept) -> current & kept) & ~keep;
+            for (; players != 0; players &= players - 1) {
+                int player = word * Long.SIZE + Long.numberOfTrailingZeros(players);
+                playerTokens.accumulateAndGet(player, ~(1L << slot), (tokens, mask) -> tokens & mask);
+            }
+        }
+    }
+
+    /**
+     * @param player - the player.
+     * @param slot   - the slot.
+     * @return       - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens.get(player) & 1L << slot) != 0;
+    }
+
+    /**
+     * @param player - the player.
+     * @return       - the slots the player has tokens on, as a bitmask.
+     */
+    public long tokens(int player) {
+        return playerTokens.get(player);
+    }
+
+    /**
+     * @param player - the player.
+     * @return       - the number of tokens the player has on the table.
+     */
+    public int countTokens(int player) {
+        return Long.bitCount(playerTokens.get(player));
+    }
 }
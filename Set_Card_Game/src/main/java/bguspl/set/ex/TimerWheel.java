@@ -0,0 +1,222 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs the deadlines of the game (player freezes, the countdown and the turn timeout) on a single thread,
+ * using a hierarchical timer wheel with a tick of one millisecond.
+ * Each level of the wheel has 64 buckets, each spanning 64 times the buckets of the level below it, so scheduling
+ * and cancelling take constant time, and the thread only wakes up for the ticks that have timeouts to fire or to
+ * move down a level. Deadlines beyond the top level wait in an overflow list.
+ * The tasks run on the wheel's thread, so they should be quick. A task which fails is logged, and the wheel goes on
+ * with the other tasks.
+ *
+ * @inv every timeout in a bucket of level l is due within the span of that bucket
+ */
+public class TimerWheel {
+
+    /**
+     * A task scheduled to run at a deadline.
+     */
+    public static final class Timeout {
+
+        private final long deadline;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * @return - the time the task runs at, in milliseconds since the epoch.
+         */
+        public long deadline() {
+            return deadline;
+        }
+
+        /**
+         * Cancels the task, if it did not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    // the number of bits of the tick each level spans, and the number of levels
+    private static final int BITS = 6;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int LEVELS = 4;
+
+    /**
+     * The buckets of each level (only accessed by the wheel's thread).
+     */
+    private final List<List<Timeout>> buckets = new ArrayList<>(LEVELS * BUCKETS);
+
+    /**
+     * The timeouts due beyond the top level (only accessed by the wheel's thread).
+     */
+    private final List<Timeout> overflow = new ArrayList<>();
+
+    /**
+     * The timeouts scheduled since the wheel's thread last placed them in the buckets.
+     */
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The last tick the wheel fired the timeouts of (only accessed by the wheel's thread).
+     */
+    private long current;
+
+    private final String name;
+    private final Logger logger;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread thread;
+    private volatile boolean terminate;
+
+    /**
+     * The class constructor. The wheel's thread starts with the first task scheduled.
+     *
+     * @param name   - the name of the wheel's thread.
+     * @param logger - the logger to report failed tasks to.
+     */
+    public TimerWheel(String name, Logger logger) {
+        this.name = name;
+        this.logger = logger;
+        for (int i = 0; i < LEVELS * BUCKETS; i++)
+            buckets.add(new ArrayList<>());
+    }
+
+    /**
+     * Schedules a task to run at a deadline (right away if the deadline passed).
+     *
+     * @param deadline - the time to run the task at, in milliseconds since the epoch.
+     * @param task     - the task.
+     * @return - the timeout, to cancel the task with.
+     */
+    public Timeout schedule(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(deadline, task);
+        scheduled.add(timeout);
+        if (started.compareAndSet(false, true)) {
+            Thread wheel = new Thread(this::run, name);
+            wheel.setDaemon(true);
+            thread = wheel;
+            wheel.start();
+        }
+        LockSupport.unpark(thread);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel's thread. The tasks which did not run yet never will.
+     */
+    public void shutdown() {
+        terminate = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        current = System.currentTimeMillis();
+        while (!terminate) {
+            for (Timeout timeout; (timeout = scheduled.poll()) != null; )
+                place(timeout);
+            long now = System.currentTimeMillis();
+            while (current < now && !terminate) {
+                // the ticks before the next one with timeouts have nothing to do
+                current = Math.max(current, Math.min(now, nextWake()) - 1);
+                tick(++current);
+            }
+            long wake = nextWake();
+            if (!scheduled.isEmpty() || wake <= current)
+                continue;
+            if (wake == Long.MAX_VALUE)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, (wake - System.currentTimeMillis()) * 1_000_000L);
+        }
+    }
+
+    /**
+     * Puts a timeout in the lowest level whose current span holds its deadline, or runs it if it is due.
+     */
+    private void place(Timeout timeout) {
+        if (timeout.cancelled)
+            return;
+        if (timeout.deadline <= current) {
+            fire(timeout);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * (level + 1);
+            if (timeout.deadline >> shift == current >> shift) {
+                bucket(level, timeout.deadline).add(timeout);
+                return;
+            }
+        }
+        overflow.add(timeout);
+    }
+
+    /**
+     * Moves the timeouts of the buckets starting at the tick down a level, then runs the timeouts due at the tick.
+     */
+    private void tick(long tick) {
+        if ((tick & ((1L << BITS * LEVELS) - 1)) == 0)
+            cascade(overflow);
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << BITS * level) - 1)) == 0)
+                cascade(bucket(level, tick));
+        }
+        List<Timeout> due = bucket(0, tick);
+        for (int i = 0; i < due.size(); i++) {
+            Timeout timeout = due.get(i);
+            if (!timeout.cancelled)
+                fire(timeout);
+        }
+        due.clear();
+    }
+
+    private void fire(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (Throwable e) {
+            // the wheel runs every deadline of the game, so its thread must outlive a failed task
+            logger.log(Level.SEVERE, "timer task of " + name + " failed", e);
+        }
+    }
+
+    private void cascade(List<Timeout> bucket) {
+        List<Timeout> timeouts = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Timeout timeout : timeouts)
+            place(timeout);
+    }
+
+    /**
+     * @return - the next tick with timeouts to run or to move down a level, or Long.MAX_VALUE if there is none.
+     */
+    private long nextWake() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long window = current >> (shift + BITS) << (shift + BITS);
+            for (long index = ((current >> shift) & (BUCKETS - 1)) + 1; index < BUCKETS; index++) {
+                if (!buckets.get(level * BUCKETS + (int) index).isEmpty())
+                    return window + (index << shift);
+            }
+        }
+        if (!overflow.isEmpty())
+            return (current >> BITS * LEVELS) + 1 << BITS * LEVELS;
+        return Long.MAX_VALUE;
+    }
+
+    private List<Timeout> bucket(int level, long tick) {
+        return buckets.get(level * BUCKETS + (int) ((tick >> BITS * level) & (BUCKETS - 1)));
+    }
+}
@@ -0,0 +1,22 @@
+package bguspl.set.ex;
+
+/**
+ * The verdict of the dealer on a claim of a player.
+ */
+public enum Verdict {
+
+    /**
+     * The claim is a set: the player gets a point and its cards leave the table.
+     */
+    SET,
+
+    /**
+     * The claim is not a set: the player gets a penalty.
+     */
+    NOT_SET,
+
+    /**
+     * The claim was returned without a verdict, as some of its slots changed since the player read them.
+     */
+    STALE
+}
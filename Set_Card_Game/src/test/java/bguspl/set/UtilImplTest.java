@@ -0,0 +1,281 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    Config config;
+    UtilImpl util;
+
+    private static Config createConfig(int featureSize, int featureCount) {
+        return createConfig(featureSize, featureCount, false);
+    }
+
+    private static Config createConfig(int featureSize, int featureCount, boolean parallel) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("ParallelFindSets", Boolean.toString(parallel));
+        properties.put("ParallelFindSetsThreshold", "0");
+        return new Config(new MockLogger(), properties);
+    }
+
+    private static Set<List<Integer>> asSet(List<int[]> sets) {
+        return sets.stream().map(set -> Arrays.stream(set).boxed().collect(Collectors.toList())).collect(Collectors.toSet());
+    }
+
+    // the set rule checked feature by feature, to compare the packed tests with
+    private boolean isSet(int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        for (int i = 0; i < config.featureCount; ++i) {
+            int feature = i;
+            long distinct = IntStream.range(0, cards.length).map(j -> features[j][feature]).distinct().count();
+            if (distinct != 1 && distinct != cards.length) return false;
+        }
+        return true;
+    }
+
+    private List<Integer> fullDeck() {
+        return IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    @BeforeEach
+    void setUp() {
+        config = createConfig(3, 4);
+        util = new UtilImpl(config);
+    }
+
+    @Test
+    void cardToFeatures_MatchesConfigTable() {
+        int[] features = new int[config.featureCount];
+        for (int card = 0; card < config.deckSize; ++card) {
+            config.cardToFeatures(card, features);
+            assertArrayEquals(util.cardToFeatures(card), features);
+            int value = 0;
+            for (int i = 0; i < config.featureCount; ++i)
+                value = value * config.featureSize + config.feature(card, i);
+            assertEquals(card, value);
+        }
+    }
+
+    @Test
+    void cardsToFeatures_MatchesCardToFeatures() {
+        int[] cards = {80, 0, 41, 41, 7};
+        int[] features = new int[cards.length * config.featureCount];
+        config.cardsToFeatures(cards, features);
+        for (int j = 0; j < cards.length; ++j)
+            assertArrayEquals(util.cardToFeatures(cards[j]),
+                    Arrays.copyOfRange(features, j * config.featureCount, (j + 1) * config.featureCount));
+    }
+
+    // claims of a size other than featureSize are tested feature by feature
+    @Test
+    void testSet_ByFeatures() {
+        for (int a = 0; a < config.deckSize; a += 2)
+            for (int b = 0; b < config.deckSize; b += 3)
+                for (int c = 0; c < config.deckSize; c += 5) {
+                    int[] cards = {a, b, c, (a + b + c) % config.deckSize};
+                    assertEquals(isSet(cards), util.testSet(cards));
+                }
+    }
+
+    @Test
+    void packedCard_KeepsCardOrder() {
+        for (int card = 1; card < config.deckSize; ++card)
+            assertTrue(util.packedCard(card - 1) < util.packedCard(card));
+    }
+
+    @Test
+    void testSet_ThreeCards() {
+        for (int a = 0; a < config.deckSize; ++a)
+            for (int b = 0; b < config.deckSize; ++b)
+                for (int c = b; c < config.deckSize; c += 7)
+                    assertEquals(isSet(new int[]{a, b, c}), util.testSet(a, b, c));
+    }
+
+    @Test
+    void testSet_FeatureSizeFour() {
+        config = createConfig(4, 3);
+        util = new UtilImpl(config);
+        for (int a = 0; a < config.deckSize; a += 3)
+            for (int b = 0; b < config.deckSize; b += 5)
+                for (int c = 0; c < config.deckSize; ++c)
+                    for (int d = c; d < config.deckSize; d += 11) {
+                        int[] cards = {a, b, c, d};
+                        assertEquals(isSet(cards), util.testSet(cards));
+                    }
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        // every pair of cards has exactly one card completing it to a set
+        assertEquals(81 * 80 / 6, util.findSets(fullDeck(), Integer.MAX_VALUE).size());
+        util.findSets(fullDeck(), Integer.MAX_VALUE).forEach(set -> assertTrue(isSet(set)));
+    }
+
+    @Test
+    void findSets_RandomDecks() {
+        Random random = new Random(0);
+        for (int round = 0; round < 20; ++round) {
+            List<Integer> deck = fullDeck();
+            Collections.shuffle(deck, random);
+            deck = deck.subList(0, 3 + random.nextInt(config.deckSize - 3));
+
+            int expected = 0;
+            for (int a = 0; a < deck.size(); ++a)
+                for (int b = a + 1; b < deck.size(); ++b)
+                    for (int c = b + 1; c < deck.size(); ++c)
+                        if (isSet(new int[]{deck.get(a), deck.get(b), deck.get(c)})) ++expected;
+
+            List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+            assertEquals(expected, sets.size());
+            for (int[] set : sets) {
+                assertTrue(isSet(set));
+                assertTrue(set[0] < set[1] && set[1] < set[2]);
+                for (int card : set)
+                    assertTrue(deck.contains(card));
+            }
+        }
+    }
+
+    @Test
+    void findSets_LargerFeatureSizes() {
+        int[][] sizes = {{2, 5}, {4, 3}, {5, 2}, {6, 2}};
+        Random random = new Random(0);
+        for (int[] size : sizes) {
+            config = createConfig(size[0], size[1]);
+            util = new UtilImpl(config);
+            List<Integer> deck = fullDeck();
+            Collections.shuffle(deck, random);
+            deck = deck.subList(0, Math.min(deck.size(), 24));
+
+            // count the sets among all the combinations of featureSize cards
+            int expected = 0;
+            int k = config.featureSize;
+            int[] combination = IntStream.range(0, k).toArray();
+            while (combination[k - 1] < deck.size()) {
+                int[] cards = new int[k];
+                for (int i = 0; i < k; ++i)
+                    cards[i] = deck.get(combination[i]);
+                if (isSet(cards)) ++expected;
+                int t = k - 1;
+                while (t != 0 && combination[t] == deck.size() - k + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+            }
+
+            List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+            assertEquals(expected, sets.size());
+            for (int[] set : sets)
+                assertTrue(isSet(set));
+        }
+    }
+
+    @Test
+    void findSets_Count() {
+        assertEquals(5, util.findSets(fullDeck(), 5).size());
+    }
+
+    @Test
+    void findSetsWith_MatchesFindSets() {
+        int[][] sizes = {{3, 4}, {4, 3}, {5, 2}};
+        for (int[] size : sizes) {
+            config = createConfig(size[0], size[1]);
+            util = new UtilImpl(config);
+            BitSet deck = new BitSet();
+            deck.set(0, config.deckSize);
+            List<int[]> all = util.findSets(fullDeck(), Integer.MAX_VALUE);
+            for (int card = 0; card < config.deckSize; card += 5) {
+                int with = card;
+                List<int[]> expected = all.stream().filter(set -> Arrays.stream(set).anyMatch(c -> c == with))
+                        .collect(Collectors.toList());
+                assertEquals(asSet(expected), asSet(util.findSetsWith(card, deck, Integer.MAX_VALUE)));
+            }
+        }
+    }
+
+    @Test
+    void findSets_NoSetsForACountOfZero() {
+        int[][] sizes = {{3, 4}, {4, 3}, {2, 4}};
+        for (int[] size : sizes) {
+            config = createConfig(size[0], size[1]);
+            util = new UtilImpl(config);
+            BitSet deck = new BitSet();
+            deck.set(0, config.deckSize);
+            assertTrue(util.findSets(fullDeck(), 0).isEmpty());
+            assertTrue(util.findSets(fullDeck(), -1).isEmpty());
+            assertTrue(util.findSetsWith(0, deck, 0).isEmpty());
+            assertTrue(util.findSetsWith(0, deck, -1).isEmpty());
+            assertEquals(1, util.findSetsWith(0, deck, 1).size());
+        }
+    }
+
+    @Test
+    void streamSets_MatchesFindSets() {
+        int[][] sizes = {{3, 4}, {4, 3}, {2, 4}};
+        for (int[] size : sizes) {
+            config = createConfig(size[0], size[1]);
+            util = new UtilImpl(config);
+            BitSet deck = new BitSet();
+            deck.set(0, config.deckSize);
+            Set<List<Integer>> expected = asSet(util.findSets(fullDeck(), Integer.MAX_VALUE));
+            assertEquals(expected, asSet(util.streamSets(deck).collect(Collectors.toList())));
+            assertEquals(expected, asSet(util.streamSets(deck).parallel().collect(Collectors.toList())));
+            assertEquals(3, util.streamSets(deck).limit(3).count());
+        }
+    }
+
+    @Test
+    void streamSets_IgnoresLaterChangesOfTheCards() {
+        BitSet deck = new BitSet();
+        deck.set(0, config.deckSize);
+        Set<List<Integer>> expected = asSet(util.findSets(fullDeck(), Integer.MAX_VALUE));
+        Spliterator<int[]> sets = util.setsSpliterator(deck);
+        deck.clear();
+        List<int[]> found = new ArrayList<>();
+        sets.forEachRemaining(found::add);
+        assertEquals(expected, asSet(found));
+    }
+
+    @Test
+    void findSets_Parallel() {
+        int[][] sizes = {{3, 5}, {4, 3}};
+        for (int[] size : sizes) {
+            config = createConfig(size[0], size[1]);
+            List<int[]> expected = new UtilImpl(config).findSets(fullDeck(), Integer.MAX_VALUE);
+
+            util = new UtilImpl(createConfig(size[0], size[1], true));
+            List<int[]> sets = util.findSets(fullDeck(), Integer.MAX_VALUE);
+            assertEquals(expected.size(), sets.size());
+            assertEquals(asSet(expected), asSet(sets));
+
+            List<int[]> some = util.findSets(fullDeck(), 7);
+            assertEquals(7, some.size());
+            assertTrue(asSet(expected).containsAll(asSet(some)));
+        }
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
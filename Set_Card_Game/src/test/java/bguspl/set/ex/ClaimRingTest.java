@@ -0,0 +1,99 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimRingTest {
+
+    // tests that a published claim is copied into the ring, and polled once
+    @Test
+    void publish_ThenPoll() {
+        ClaimRing ring = new ClaimRing(2, 3);
+        assertNull(ring.poll());
+
+        int[] cards = {4, 5, 6};
+        ring.publish(1, cards, new int[]{0, 1, 2}, new int[]{3, 1, 2}, true);
+        cards[0] = 9;
+        assertEquals(1, ring.size());
+
+        ClaimRing.Claim claim = ring.poll();
+        assertEquals(1, claim.player);
+        assertArrayEquals(new int[]{4, 5, 6}, claim.cards);
+        assertArrayEquals(new int[]{0, 1, 2}, claim.slots);
+        assertArrayEquals(new int[]{3, 1, 2}, claim.versions);
+        assertTrue(claim.legal);
+        assertNull(ring.poll());
+
+        ring.release();
+        assertEquals(0, ring.size());
+    }
+
+    // tests that claims of many players publishing at once are all consumed, each one whole
+    @Test
+    void publish_ManyPlayers() throws InterruptedException {
+        int players = 8;
+        int claimsPerPlayer = 10000;
+        ClaimRing ring = new ClaimRing(players, 3);
+        Thread[] threads = new Thread[players];
+        for (int i = 0; i < players; i++) {
+            int player = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < claimsPerPlayer; j++) {
+                    // a player publishes its next claim once the dealer released the last one
+                    while (ring.outstanding(player) > 0)
+                        Thread.yield();
+                    ring.publish(player, new int[]{player, j, player + j}, new int[]{j, player, j}, new int[3], false);
+                }
+            });
+            threads[i].start();
+        }
+
+        int[] received = new int[players];
+        long sequence = 0;
+        for (int consumed = 0; consumed < players * claimsPerPlayer; ) {
+            ClaimRing.Claim claim = ring.poll();
+            if (claim == null) {
+                ring.release();
+                Thread.yield();
+                continue;
+            }
+            assertEquals(sequence++, claim.sequence);
+            assertEquals(received[claim.player]++, claim.cards[1]);
+            assertEquals(claim.player + claim.cards[1], claim.cards[2]);
+            assertEquals(claim.cards[1], claim.slots[0]);
+            consumed++;
+        }
+        ring.release();
+        for (Thread thread : threads)
+            thread.join();
+        for (int count : received)
+            assertEquals(claimsPerPlayer, count);
+    }
+
+    // tests that a player with a claim in the ring cannot publish another one, while the other players still can
+    @Test
+    void publish_FailsWhileThePlayerHasAClaim() {
+        ClaimRing ring = new ClaimRing(2, 3);
+        ring.publish(0, new int[3], new int[3], new int[3], true);
+        assertThrows(IllegalStateException.class,
+                () -> ring.publish(0, new int[3], new int[3], new int[3], false));
+        ring.publish(1, new int[3], new int[3], new int[3], true);
+        assertEquals(1, ring.outstanding(0));
+
+        assertEquals(0, ring.poll().player);
+        assertEquals(1, ring.poll().player);
+        assertNull(ring.poll());
+        ring.release();
+        assertEquals(0, ring.outstanding(0));
+        assertEquals(0, ring.outstanding(1));
+
+        ring.publish(0, new int[3], new int[3], new int[3], false);
+        assertFalse(ring.poll().legal);
+    }
+}
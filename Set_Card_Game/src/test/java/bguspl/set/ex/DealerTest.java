@@ -4,6 +4,7 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,9 +12,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
 @ExtendWith(MockitoExtension.class)
 
 class DealerTest {
@@ -43,8 +53,8 @@ class DealerTest {
         table =new Table(env , slots, cards);
         players =  new Player[2];
         dealer = new Dealer(env, table,players);
-        player1 = new Player(env, dealer, table, 1, true);
-        player2 = new Player(env, dealer, table, 2, true);
+        player1 = new Player(env, dealer, table, 0, true);
+        player2 = new Player(env, dealer, table, 1, true);
         players[0] = player1;
         players[1] = player2;
         player1.toFreeze=true;
@@ -89,6 +99,7 @@ class DealerTest {
         player1.keyPressed(0);
         player1.keyPressed(1);
         player1.keyPressed(2);
+        player1.handleKeyPresses();
         //dealer.testRemoveCardsFrom();
         //assertNotEquals(0, table.slotToCard[0]);
        //  assertNotEquals(1, table.slotToCard[1]);
@@ -96,6 +107,231 @@ class DealerTest {
 
     }
 
+    @Test
+    void submitClaim_CompletesWithTheVerdict() throws Exception {
+        when(util.testSet(0, 1, 2)).thenReturn(true);
+        CompletableFuture<Verdict> set = dealer.submitClaim(0, new int[]{0, 1, 2});
+        CompletableFuture<Verdict> notSet = dealer.submitClaim(1, new int[]{3, 4, 5});
+        assertFalse(set.isDone());
+        assertEquals(3, player1.numOfTokens());
+
+        // a player with a claim in flight cannot claim again
+        CompletableFuture<Verdict> again = dealer.submitClaim(0, new int[]{6, 7, 8});
+        ExecutionException thrown = assertThrows(ExecutionException.class, again::get);
+        assertTrue(thrown.getCause() instanceof IllegalStateException);
+
+        dealer.testRemoveCardsFrom();
+        assertEquals(Verdict.SET, set.get(0, TimeUnit.SECONDS));
+        assertEquals(Verdict.NOT_SET, notSet.get(0, TimeUnit.SECONDS));
+        assertNull(table.slotToCard[0]);
+        assertEquals(Player.State.VERDICT, player1.getState());
+    }
+
+    @Test
+    void submitClaim_OnAnEmptySlotIsStale() throws Exception {
+        assertEquals(Verdict.STALE, dealer.submitClaim(0, new int[]{9, 10, 11}).get(0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> dealer.submitClaim(0, new int[]{1, 1, 2}));
+    }
+
+    // creates the config of a 3x4 table of 81 cards, with the given settings on top
+    private static Config realConfig(int players, String... settings) {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("HumanPlayers", String.valueOf(players));
+        for (int i = 0; i < settings.length; i += 2)
+            properties.put(settings[i], settings[i + 1]);
+        return new Config(new TableTest.MockLogger(), properties);
+    }
+
+    // creates a dealer on a real util and an empty table, with the given settings on top of a 3x4 table of 81 cards
+    private Dealer realDealer(Table[] table, Player[] players, String... settings) {
+        Config config = realConfig(players.length, settings);
+        Env env = new Env(new TableTest.MockLogger(), config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table[0] = new Table(env);
+        Dealer dealer = new Dealer(env, table[0], players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table[0], i, true);
+        return dealer;
+    }
+
+    // tests that the sets in play, counted down as sets are taken, match a full recount all along a game
+    @Test
+    void setsInPlay_MatchesARecountUntilTheGameEnds() throws Exception {
+        Table[] tables = new Table[1];
+        Player[] game = new Player[1];
+        Dealer dealer = realDealer(tables, game);
+        Table table = tables[0];
+        assertEquals(dealer.testRecountSetsInPlay(), dealer.testSetsInPlay());
+
+        dealer.testPlaceCard();
+        for (int round = 0; round < 500 && !dealer.testShouldFinish(); round++) {
+            int[] set = table.anySet();
+            if (set == null) {
+                // no set on the table: reshuffle, which puts no card out of play
+                dealer.testRemoveAllCardsFromTable();
+            } else {
+                int[] slots = new int[set.length];
+                for (int i = 0; i < set.length; i++)
+                    slots[i] = table.cardToSlot[set[i]];
+                CompletableFuture<Verdict> verdict = dealer.submitClaim(0, slots);
+                dealer.testRemoveCardsFrom();
+                assertEquals(Verdict.SET, verdict.get(0, TimeUnit.SECONDS));
+                game[0].clearTokens();
+            }
+            assertEquals(dealer.testRecountSetsInPlay(), dealer.testSetsInPlay());
+            dealer.testPlaceCard();
+        }
+        assertTrue(dealer.testShouldFinish());
+        assertEquals(0, dealer.testRecountSetsInPlay());
+    }
+
+    // tests that the claims of a batch checked on several threads get the same verdicts as the rule
+    @Test
+    void submitClaim_ChecksABatchInParallel() throws Exception {
+        Table[] tables = new Table[1];
+        Player[] game = new Player[4];
+        Dealer dealer = realDealer(tables, game, "ParallelClaimChecks", "True", "ParallelClaimChecksThreshold", "2");
+        Table table = tables[0];
+        Util util = new UtilImpl(realConfig(game.length));
+        dealer.testPlaceCard();
+
+        // the claims are on distinct slots, so none of them makes another one stale
+        List<CompletableFuture<Verdict>> verdicts = new ArrayList<>();
+        List<Verdict> expected = new ArrayList<>();
+        for (int player = 0; player < game.length; player++) {
+            int[] slots = {3 * player, 3 * player + 1, 3 * player + 2};
+            int[] cards = {table.slotToCard[slots[0]], table.slotToCard[slots[1]], table.slotToCard[slots[2]]};
+            expected.add(util.testSet(cards) ? Verdict.SET : Verdict.NOT_SET);
+            verdicts.add(dealer.submitClaim(player, slots));
+        }
+        dealer.testRemoveCardsFrom();
+        for (int player = 0; player < game.length; player++)
+            assertEquals(expected.get(player), verdicts.get(player).get(0, TimeUnit.SECONDS));
+    }
+
+    // tests that when two players claim the same set, the player served first wins, and it changes with each batch
+    @Test
+    void commitClaims_RotatesThePlayerServedFirst() throws Exception {
+        Table[] tables = new Table[1];
+        Player[] game = new Player[2];
+        Dealer dealer = realDealer(tables, game);
+        Table table = tables[0];
+
+        for (int batch = 0; batch < 2; batch++) {
+            dealer.testPlaceCard();
+            while (table.anySet() == null) {
+                dealer.testRemoveAllCardsFromTable();
+                dealer.testPlaceCard();
+            }
+            int[] set = table.anySet();
+            int[] slots = new int[set.length];
+            for (int i = 0; i < set.length; i++)
+                slots[i] = table.cardToSlot[set[i]];
+            // the later player claims first, so the order of the claims does not decide the winner
+            CompletableFuture<Verdict> second = dealer.submitClaim(1 - batch, slots);
+            CompletableFuture<Verdict> first = dealer.submitClaim(batch, slots);
+            dealer.testRemoveCardsFrom();
+            assertEquals(Verdict.SET, first.get(0, TimeUnit.SECONDS));
+            assertEquals(Verdict.STALE, second.get(0, TimeUnit.SECONDS));
+            for (Player player : game)
+                player.clearTokens();
+        }
+    }
+
+    // tests that the computer players' scheduler exists only with computer players, and numbers its threads
+    @Test
+    void aiScheduler_NamesItsThreadsAndOnlyRunsWithComputerPlayers() throws Exception {
+        assertNull(realDealer(new Table[1], new Player[1]).aiScheduler);
+
+        Dealer dealer = realDealer(new Table[1], new Player[1], "ComputerPlayers", "2");
+        try {
+            String name = dealer.aiScheduler.schedule(() -> Thread.currentThread().getName(), 0, TimeUnit.MILLISECONDS)
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(name.matches("computers-\\d+"), name);
+        } finally {
+            dealer.aiScheduler.shutdownNow();
+        }
+    }
+
+    // reshuffles the table until the dealer expands it with a spare column, and returns the cards of the grid
+    private static List<Integer> reshuffleUntilExpanded(Dealer dealer, Table table) {
+        for (int round = 0; round < 10000; round++) {
+            dealer.testRemoveAllCardsFromTable();
+            dealer.testPlaceCard();
+            if (table.countCards() > 12 && table.countSets() > 0) {
+                List<Integer> grid = new ArrayList<>();
+                for (int slot = 0; slot < 12; slot++)
+                    grid.add(table.slotToCard[slot]);
+                return grid;
+            }
+        }
+        return fail("the table was never expanded");
+    }
+
+    // tests that the spare column is dealt only when the grid has no set on it
+    @Test
+    void expandTable_DealsTheSpareColumnWhenNoSetIsOnTheTable() {
+        Table[] tables = new Table[1];
+        Dealer dealer = realDealer(tables, new Player[1], "TableExpansion", "True");
+        Table table = tables[0];
+        Util util = new UtilImpl(realConfig(1, "TableExpansion", "True"));
+
+        for (int round = 0; round < 200; round++) {
+            dealer.testRemoveAllCardsFromTable();
+            dealer.testPlaceCard();
+            if (table.countCards() == 12)
+                assertTrue(table.countSets() > 0);
+        }
+        List<Integer> grid = reshuffleUntilExpanded(dealer, table);
+        assertEquals(15, table.countCards());
+        assertTrue(util.findSets(grid, 1).isEmpty());
+        for (int slot = 12; slot < 15; slot++)
+            assertNotNull(table.slotToCard[slot]);
+    }
+
+    // tests that once a set is taken, the spare cards left move into the empty slots of the grid
+    @Test
+    void moveSpareCards_FillsTheEmptySlotsOfTheGrid() throws Exception {
+        Table[] tables = new Table[1];
+        Player[] game = new Player[1];
+        Dealer dealer = realDealer(tables, game, "TableExpansion", "True");
+        Table table = tables[0];
+        reshuffleUntilExpanded(dealer, table);
+
+        // the grid has no set, so the set taken holds a spare card, and each slot it frees in the grid keeps a spare
+        // card left
+        int[] set = table.anySet();
+        int[] slots = new int[set.length];
+        for (int i = 0; i < set.length; i++)
+            slots[i] = table.cardToSlot[set[i]];
+        CompletableFuture<Verdict> verdict = dealer.submitClaim(0, slots);
+        dealer.testRemoveCardsFrom();
+        assertEquals(Verdict.SET, verdict.get(0, TimeUnit.SECONDS));
+        Set<Integer> spare = new HashSet<>();
+        for (int slot = 12; slot < 15; slot++) {
+            if (table.slotToCard[slot] != null)
+                spare.add(table.slotToCard[slot]);
+        }
+        Set<Integer> emptied = new HashSet<>();
+        for (int slot : slots) {
+            if (slot < 12)
+                emptied.add(slot);
+        }
+        assertEquals(emptied.size(), spare.size());
+
+        dealer.testPlaceCard();
+        Set<Integer> moved = new HashSet<>();
+        for (int slot : emptied)
+            moved.add(table.slotToCard[slot]);
+        assertEquals(spare, moved);
+        for (int card : spare)
+            assertTrue(table.cardToSlot[card] < 12);
+    }
+
     @Test
     void freezePlayer() {
     }
@@ -0,0 +1,68 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealingStrategyTest {
+
+    Config config;
+    Env env;
+    Table table;
+    DrawPile deck;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        config = new Config(new TableTest.MockLogger(), properties);
+        env = new Env(new TableTest.MockLogger(), config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        deck = new DrawPile(config.deckSize);
+    }
+
+    // tests that the card dealt is swapped for the only card of the deck which completes a set
+    @Test
+    void guaranteedSet_SwapsInACompletingCard() {
+        // cards 0, 1 and 2 differ only in the last feature, so only card 2 completes cards 0 and 1
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        for (int card = 3; card < config.deckSize; card++)
+            deck.add(card);
+        deck.add(2);
+
+        DealingStrategy strategy = DealingStrategy.forName("GuaranteedSet", env.util);
+        for (int round = 0; round < 10; round++) {
+            int[] cards = strategy.draw(deck, table, 1);
+            assertArrayEquals(new int[]{2}, cards);
+            deck.add(2);
+        }
+        assertTrue(strategy.reshufflesWithoutSet());
+    }
+
+    // tests that the random strategy draws the requested number of distinct cards
+    @Test
+    void random_DrawsCards() {
+        for (int card = 0; card < config.deckSize; card++)
+            deck.add(card);
+        DealingStrategy strategy = DealingStrategy.forName("Random", env.util);
+        assertTrue(strategy instanceof DealingStrategy.Uniform);
+        int[] cards = strategy.draw(deck, table, 12);
+        assertEquals(12, cards.length);
+        assertEquals(12, Arrays.stream(cards).distinct().count());
+        assertEquals(config.deckSize - 12, deck.size());
+        assertFalse(strategy.reshufflesWithoutSet());
+    }
+}
@@ -0,0 +1,58 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrawPileTest {
+
+    DrawPile pile;
+
+    @BeforeEach
+    void setUp() {
+        pile = new DrawPile(81);
+        for (int card = 0; card < 81; card++)
+            pile.add(card);
+    }
+
+    // tests that drawing the whole pile returns every card exactly once
+    @Test
+    void draw_AllCards() {
+        BitSet drawn = new BitSet();
+        while (!pile.isEmpty()) {
+            int card = pile.draw();
+            assertFalse(drawn.get(card));
+            drawn.set(card);
+        }
+        assertEquals(81, drawn.cardinality());
+    }
+
+    // tests that cards returned to the pile can be drawn again
+    @Test
+    void add_AfterDraw() {
+        int card = pile.draw();
+        assertEquals(80, pile.size());
+
+        pile.add(card);
+        assertEquals(81, pile.size());
+        BitSet drawn = new BitSet();
+        while (!pile.isEmpty())
+            drawn.set(pile.draw());
+        assertTrue(drawn.get(card));
+        assertEquals(81, drawn.cardinality());
+    }
+
+    // tests that removing a card by position moves the last card into its place
+    @Test
+    void remove_ByPosition() {
+        int last = pile.get(pile.size() - 1);
+        assertEquals(pile.get(10), pile.remove(10));
+        assertEquals(last, pile.get(10));
+        assertEquals(80, pile.size());
+    }
+}
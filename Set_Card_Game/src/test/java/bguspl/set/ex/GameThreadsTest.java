@@ -0,0 +1,24 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameThreadsTest {
+
+    // tests that a thread runs its task whether it is virtual or not (virtual threads fall back on older JDKs)
+    @Test
+    void newThread_RunsTask() throws InterruptedException {
+        for (boolean virtual : new boolean[]{false, true}) {
+            AtomicBoolean ran = new AtomicBoolean();
+            Thread thread = GameThreads.newThread(virtual, "player-0", () -> ran.set(true));
+            assertEquals("player-0", thread.getName());
+            thread.start();
+            thread.join();
+            assertTrue(ran.get());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyPressRingTest {
+
+    // tests that the ring holds exactly its capacity, and hands the presses back in order as it wraps around
+    @Test
+    void offer_DropsWhenFull() {
+        KeyPressRing presses = new KeyPressRing(3);
+        for (int round = 0; round < 5; round++) {
+            assertTrue(presses.offer(round));
+            assertTrue(presses.offer(round + 1));
+            assertTrue(presses.offer(round + 2));
+            assertFalse(presses.offer(round + 3));
+            assertEquals(3, presses.size());
+
+            assertEquals(round, presses.poll());
+            assertEquals(round + 1, presses.poll());
+            assertEquals(round + 2, presses.poll());
+            assertEquals(-1, presses.poll());
+        }
+    }
+
+    // tests that presses offered by one thread all reach the polling thread, in order
+    @Test
+    void poll_SeesPressesOfAnotherThread() throws InterruptedException {
+        KeyPressRing presses = new KeyPressRing(4);
+        int count = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!presses.offer(i % 12))
+                    Thread.yield();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            int slot;
+            while ((slot = presses.poll()) < 0)
+                Thread.yield();
+            assertEquals(i % 12, slot);
+        }
+        producer.join();
+    }
+}
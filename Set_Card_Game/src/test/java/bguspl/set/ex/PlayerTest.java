@@ -93,6 +93,21 @@ class PlayerTest {
         assertInvariants();
     }
 
+    // presses a key and lets the player handle it, as the player thread would
+    private void press(int slot) {
+        player.keyPressed(slot);
+        player.handleKeyPresses();
+    }
+
+    @Test
+    void keyPressed_QueuesUntilHandled() {
+        player.keyPressed(1);
+        player.keyPressed(2);
+        assertEquals(0, player.numOfTokens());
+        player.handleKeyPresses();
+        assertEquals(2, player.numOfTokens());
+    }
+
         @Test
         void point() {
 
@@ -117,33 +132,73 @@ class PlayerTest {
     void keyPressed() {
 
         // at the beginning, player should have zero token on the table
-        assertEquals(0,player.numOfTokens);
+        assertEquals(0,player.numOfTokens());
 
         // pressing on one of the slot, should increase the num of token by 1.
-        player.keyPressed(1);
-        assertEquals(1,player.numOfTokens); //
+        press(1);
+        assertEquals(1,player.numOfTokens()); //
 
         // pressing on one of the slot that the player had
         // already put token on, should remove the token from the slot.
-        player.keyPressed(1);
-        assertEquals(0,player.numOfTokens); //
+        press(1);
+        assertEquals(0,player.numOfTokens()); //
 
-        player.keyPressed(1);
-        player.keyPressed(2);
-        assertEquals(2,player.numOfTokens); //
-        assertEquals(2,player.tokens.size());
-        assertEquals(0,dealer.cards.size());
+        press(1);
+        press(2);
+        assertEquals(2,player.numOfTokens()); //
+        assertTrue(table.hasToken(player.id, 1) && table.hasToken(player.id, 2));
+        assertEquals(0,dealer.claims.size());
 
         // with putting the third token on the table, the dealer's setsPlayer  ArrayDeque size
         // should be increased by one.
-        player.keyPressed(3);
-        assertEquals(3,player.tokens.size());
-        assertEquals(1,dealer.cards.size());
+        press(3);
+        assertEquals(3,player.numOfTokens());
+        assertEquals(1,dealer.claims.size());
 
         // the num of tokens should remain 3, since is the max num of tokens.
-        player.keyPressed(5);
-        assertEquals(3,player.tokens.size());
+        press(5);
+        assertEquals(3,player.numOfTokens());
+
+    }
 
+    @Test
+    void keyPressed_MovesThroughClaimStates() {
+        assertEquals(Player.State.IDLE, player.getState());
+        press(1);
+        assertEquals(Player.State.SELECTING, player.getState());
+        press(1);
+        assertEquals(Player.State.IDLE, player.getState());
+
+        press(1);
+        press(2);
+        press(3);
+        assertEquals(Player.State.CLAIMED, player.getState());
+
+        // the dealer sets the verdict, and only then wakes the player up
+        player.setVerdict(Verdict.STALE);
+        player.wakeUp();
+        assertEquals(Player.State.VERDICT, player.getState());
+        assertTrue(player.averageVerdictLatencyNanos() > 0);
+
+        player.clearTokens();
+        assertEquals(Player.State.IDLE, player.getState());
+        assertEquals(0, player.numOfTokens());
+    }
+
+    // tests that the tokens of a stale claim are removed from the ui as well as from the table
+    @Test
+    void clearTokens_RemovesTheTokensFromTheUi() {
+        press(1);
+        press(2);
+        press(3);
+        player.setVerdict(Verdict.STALE);
+        player.wakeUp();
+
+        player.clearTokens();
+        assertEquals(0, player.numOfTokens());
+        verify(ui).removeToken(player.id, 1);
+        verify(ui).removeToken(player.id, 2);
+        verify(ui).removeToken(player.id, 3);
     }
 
 
@@ -4,19 +4,30 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 
+import java.util.BitSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
+    private Config config;
     private Integer[] slotToCard;
     private Integer[] cardToSlot;
 
@@ -44,7 +55,7 @@ class TableTest {
         properties.put("PlayerKeys1", "81,87,69,82");
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
-        Config config = new Config(logger, properties);
+        config = new Config(logger, properties);
         slotToCard = new Integer[config.tableSize];
         cardToSlot = new Integer[config.deckSize];
 
@@ -113,6 +124,116 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void countSets_FollowsPlacedAndRemovedCards() {
+        Env env = new Env(new MockLogger(), config, new MockUserInterface(), new UtilImpl(config));
+        table = new Table(env, slotToCard, cardToSlot);
+
+        // cards 0, 1, 2 differ only in the last feature, and so do cards 3, 4, 5
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(3, 2);
+        assertEquals(0, table.countSets());
+        assertNull(table.anySet());
+
+        table.placeCard(2, 3);
+        assertEquals(1, table.countSets());
+        assertArrayEquals(new int[]{0, 1, 2}, table.anySet());
+
+        table.removeCard(1);
+        assertEquals(0, table.countSets());
+    }
+
+    @Test
+    void dealBatch_ThenRemoveCards() {
+        Env env = new Env(new MockLogger(), config, new MockUserInterface(), new UtilImpl(config));
+        table = new Table(env, slotToCard, cardToSlot);
+
+        table.dealBatch(new int[]{0, 1, 2, 3}, new int[]{1, 0, 3, 2});
+        assertEquals(4, table.countCards());
+        assertEquals(1, table.slotToCard[0]);
+        assertEquals(3, table.cardToSlot[2]);
+        assertEquals(1, table.countSets());
+
+        assertArrayEquals(new int[]{1, 3}, table.removeCards(new int[]{0, 2}));
+        assertEquals(2, table.countCards());
+        assertNull(table.slotToCard[0]);
+        assertNull(table.cardToSlot[3]);
+        assertEquals(0, table.countSets());
+    }
+
+    // tests the rows and columns of the slots, the spare column following the other columns
+    @Test
+    void slotRowAndColumn_OnTheSpareColumn() {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("TableExpansion", "True");
+        Config expanded = new Config(new MockLogger(), properties);
+        assertEquals(15, expanded.maxTableSize);
+
+        assertEquals(1, expanded.slotRow(5));
+        assertEquals(1, expanded.slotColumn(5));
+        assertEquals(2, expanded.slotRow(11));
+        assertEquals(3, expanded.slotColumn(11));
+        for (int slot = 12; slot < 15; slot++) {
+            assertEquals(slot - 12, expanded.slotRow(slot));
+            assertEquals(4, expanded.slotColumn(slot));
+        }
+    }
+
+    // tests that a table with more slots than a token bitmask holds is rejected with the config
+    @Test
+    void config_RejectsMoreThan64Slots() {
+        Properties properties = new Properties();
+        properties.put("Rows", "8");
+        properties.put("Columns", "8");
+        assertEquals(64, new Config(new MockLogger(), properties).maxTableSize);
+
+        properties.put("TableExpansion", "True");
+        assertThrows(IllegalArgumentException.class, () -> new Config(new MockLogger(), properties));
+    }
+
+    @Test
+    void isCurrent_FailsOnceASlotChanges() {
+        int[] slots = {0, 1};
+        int[] versions = {table.slotVersion(0), table.slotVersion(1)};
+        assertTrue(table.isCurrent(slots, versions));
+
+        table.placeCard(5, 1);
+        assertFalse(table.isCurrent(slots, versions));
+
+        versions[1] = table.slotVersion(1);
+        assertTrue(table.isCurrent(slots, versions));
+        table.removeCard(1);
+        assertFalse(table.isCurrent(slots, versions));
+    }
+
+    @Test
+    void tokens_IndexedByPlayerAndSlot() {
+        table.placeToken(0, 1);
+        table.placeToken(0, 3);
+        table.placeToken(1, 3);
+        assertEquals(2, table.countTokens(0));
+        assertEquals(0b1010L, table.tokens(0));
+        assertTrue(table.hasToken(1, 3));
+
+        // the tokens of all players but player 0 leave slot 3
+        table.removeTokensFrom(3, 0);
+        assertFalse(table.hasToken(1, 3));
+        assertTrue(table.hasToken(0, 3));
+
+        assertFalse(table.removeToken(1, 3));
+        assertTrue(table.removeToken(0, 1));
+        assertEquals(0b1000L, table.removeTokens(0));
+        assertEquals(0, table.countTokens(0));
+
+        // a removed token does not come back with the slot's other tokens
+        table.placeToken(1, 3);
+        table.removeTokensFrom(3, -1);
+        assertEquals(0, table.tokens(0) | table.tokens(1));
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -156,9 +277,29 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public boolean testSet(int a, int b, int c) {
+            return false;
+        }
+
+        @Override
+        public long packedCard(int card) {
+            return 0;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
-            return null;
+            return new LinkedList<>();
+        }
+
+        @Override
+        public List<int[]> findSetsWith(int card, BitSet cards, int count) {
+            return new LinkedList<>();
+        }
+
+        @Override
+        public Spliterator<int[]> setsSpliterator(BitSet cards) {
+            return Spliterators.emptySpliterator();
         }
 
         @Override
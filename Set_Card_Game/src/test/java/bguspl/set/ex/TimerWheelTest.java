@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private TimerWheel timers;
+
+    @BeforeEach
+    void setUp() {
+        timers = new TimerWheel("timers", new TableTest.MockLogger());
+    }
+
+    @AfterEach
+    void tearDown() {
+        timers.shutdown();
+    }
+
+    // tests that tasks run in deadline order, not before their deadlines, across the levels of the wheel
+    @Test
+    void schedule_RunsTasksInDeadlineOrder() throws InterruptedException {
+        // leave the wheel's thread time to start before the first deadline
+        long start = System.currentTimeMillis() + 50;
+        long[] delays = {300, 5, 70, 0, 1100};
+        List<Long> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(delays.length);
+        for (long delay : delays) {
+            timers.schedule(start + delay, () -> {
+                assertTrue(System.currentTimeMillis() >= start + delay);
+                ran.add(delay);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0L, 5L, 70L, 300L, 1100L), ran);
+    }
+
+    // tests that a task which throws, even an error, does not stop the tasks after it
+    @Test
+    void schedule_GoesOnAfterAFailedTask() throws InterruptedException {
+        long start = System.currentTimeMillis() + 50;
+        CountDownLatch done = new CountDownLatch(1);
+        timers.schedule(start, () -> {
+            throw new AssertionError("failed task");
+        });
+        timers.schedule(start + 20, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancel_SkipsTheTask() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        timers.schedule(start + 50, () -> ran.add("cancelled")).cancel();
+        timers.schedule(start + 100, () -> {
+            ran.add("kept");
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("kept"), ran);
+    }
+}